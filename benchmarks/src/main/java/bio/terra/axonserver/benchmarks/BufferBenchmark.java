@@ -0,0 +1,101 @@
+package bio.terra.axonserver.benchmarks;
+
+import bio.terra.axonserver.utils.ChunkPool;
+import bio.terra.axonserver.utils.ChunkedByteArrayOutputStream;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares a single array {@link ByteArrayOutputStream} with {@link ChunkedByteArrayOutputStream}
+ * for collecting a payload written in stream-sized pieces and reading it back. The array buffer
+ * copies its content each time it grows and again to hand it out; the chunked buffer hands out its
+ * chunks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class BufferBenchmark {
+
+  // The piece size of a typical InputStream.transferTo copy
+  private static final int WRITE_SIZE = 8192;
+
+  @Param({"1024", "1048576", "104857600"})
+  public int payloadSize;
+
+  private byte[] piece;
+  private ChunkPool pool;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    piece = new byte[WRITE_SIZE];
+    new Random(0).nextBytes(piece);
+    pool =
+        new ChunkPool(
+            CloudStorageUtils.MAX_BUFFER_SIZE, payloadSize / CloudStorageUtils.MAX_BUFFER_SIZE + 1);
+  }
+
+  private void fill(OutputStream out) throws IOException {
+    for (int written = 0; written < payloadSize; written += WRITE_SIZE) {
+      out.write(piece, 0, Math.min(WRITE_SIZE, payloadSize - written));
+    }
+  }
+
+  @Benchmark
+  public void arrayToByteArray(Blackhole blackhole) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    fill(out);
+    blackhole.consume(out.toByteArray());
+  }
+
+  @Benchmark
+  public void chunkedToByteBuffers(Blackhole blackhole) throws IOException {
+    ChunkedByteArrayOutputStream out =
+        new ChunkedByteArrayOutputStream(pool, CloudStorageUtils.MAX_OBJECT_SIZE);
+    fill(out);
+    for (ByteBuffer buffer : out.toByteBuffers()) {
+      blackhole.consume(buffer);
+    }
+    out.release();
+  }
+
+  /** Copies the content out, as serving the buffer as a response body does. */
+  @Benchmark
+  public long arrayTransfer() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    fill(out);
+    out.writeTo(OutputStream.nullOutputStream());
+    return out.size();
+  }
+
+  /** Copies the content out, as serving the buffer as a response body does. */
+  @Benchmark
+  public long chunkedTransfer() throws IOException {
+    ChunkedByteArrayOutputStream out =
+        new ChunkedByteArrayOutputStream(pool, CloudStorageUtils.MAX_OBJECT_SIZE);
+    fill(out);
+    long transferred = out.toInputStream().transferTo(OutputStream.nullOutputStream());
+    out.release();
+    return transferred;
+  }
+}
@@ -0,0 +1,153 @@
+package bio.terra.axonserver.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * In-process stand-in for an HTTP API such as WSM, Sam or Calhoun. Requests are routed by method
+ * and path to handlers registered with {@link #route}. Every request waits for the configured
+ * latency first, and a share of requests fail with a 503 instead of being handled, as they would
+ * from an overloaded service.
+ */
+public class FakeApiServer implements AutoCloseable {
+
+  /** Response to send. */
+  public record Response(int status, String contentType, byte[] body) {
+
+    public static Response json(String json) {
+      return new Response(200, "application/json", json.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Request to a route.
+   *
+   * @param path match of the route's path pattern, for its groups
+   * @param authorization Authorization header, or null
+   * @param body request body
+   */
+  public record Request(Matcher path, @Nullable String authorization, byte[] body) {}
+
+  /** Handles the requests of a route. */
+  @FunctionalInterface
+  public interface Handler {
+    Response handle(Request request) throws IOException;
+  }
+
+  private record Route(String method, Pattern path, Handler handler) {}
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final List<Route> routes = new CopyOnWriteArrayList<>();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong injectedErrors = new AtomicLong();
+  private volatile Duration latency = Duration.ZERO;
+  private volatile double errorRate;
+
+  public FakeApiServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", this::handle);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /** Base url to configure as the service's base path. */
+  public String getBaseUrl() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  /**
+   * Handle the requests with a method and a path matching a regular expression.
+   *
+   * @return this server
+   */
+  public FakeApiServer route(String method, String pathRegex, Handler handler) {
+    routes.add(new Route(method, Pattern.compile(pathRegex), handler));
+    return this;
+  }
+
+  /** Time every request waits before it is answered. */
+  public void setLatency(Duration latency) {
+    this.latency = latency;
+  }
+
+  /** Share of requests, from 0 to 1, that fail with a 503. */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  public long getInjectedErrorCount() {
+    return injectedErrors.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    try (exchange) {
+      byte[] requestBody = exchange.getRequestBody().readAllBytes();
+      sleep(latency);
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        injectedErrors.incrementAndGet();
+        send(exchange, new Response(503, "text/plain", new byte[0]));
+        return;
+      }
+      String path = exchange.getRequestURI().getPath();
+      for (Route route : routes) {
+        Matcher matcher = route.path().matcher(path);
+        if (route.method().equals(exchange.getRequestMethod()) && matcher.matches()) {
+          String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+          send(exchange, route.handler().handle(new Request(matcher, authorization, requestBody)));
+          return;
+        }
+      }
+      send(exchange, new Response(404, "text/plain", new byte[0]));
+    }
+  }
+
+  private static void send(HttpExchange exchange, Response response) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", response.contentType());
+    exchange.sendResponseHeaders(
+        response.status(), response.body().length == 0 ? -1 : response.body().length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(response.body());
+    }
+  }
+
+  static void sleep(Duration duration) throws IOException {
+    if (duration.isZero()) {
+      return;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(duration.toNanos());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting to answer");
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package bio.terra.axonserver.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for the GCS JSON API. Serves object metadata and (ranged) media downloads for
+ * objects registered with {@link #putObject} or {@link #putRepeatingObject}, and counts the TCP
+ * connections and requests that clients open against it. Latency and errors can be injected as for
+ * a {@link FakeApiServer}.
+ */
+public class FakeGcsServer implements AutoCloseable {
+
+  private static final Pattern OBJECT_PATH =
+      Pattern.compile("^(?:/download)?/storage/v1/b/([^/]+)/o/(.+)$");
+  private static final Pattern RANGE = Pattern.compile("^bytes=(\\d+)-(\\d*)$");
+  private static final long GENERATION = 1L;
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final Map<String, ObjectContent> objects = new ConcurrentHashMap<>();
+  private final Set<SocketAddress> clientConnections = ConcurrentHashMap.newKeySet();
+  private final AtomicLong requests = new AtomicLong();
+  // Pace of each media download, or 0 to send as fast as the client reads
+  private volatile long downloadBytesPerSecond;
+  private volatile Duration latency = Duration.ZERO;
+  private volatile double errorRate;
+
+  static {
+    // Avoid Nagle delays on the small metadata responses.
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  public FakeGcsServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", this::handle);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /** Base url to configure as the GCS host. */
+  public String getHost() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  public void putObject(String bucket, String object, byte[] content) {
+    objects.put(bucket + "/" + object, new ObjectContent(content, content.length));
+  }
+
+  /**
+   * Register an object made of a block repeated up to the given size, for objects too large to hold
+   * in memory.
+   */
+  public void putRepeatingObject(String bucket, String object, byte[] block, long size) {
+    objects.put(bucket + "/" + object, new ObjectContent(block, size));
+  }
+
+  /**
+   * Limit the rate at which each media download is sent, as GCS limits the throughput of a single
+   * download. Downloads in parallel are each sent at this rate.
+   *
+   * @param bytesPerSecond rate of each download, or 0 for no limit
+   */
+  public void setDownloadBytesPerSecond(long bytesPerSecond) {
+    this.downloadBytesPerSecond = bytesPerSecond;
+  }
+
+  /** Time every request waits before it is answered. */
+  public void setLatency(Duration latency) {
+    this.latency = latency;
+  }
+
+  /** Share of requests, from 0 to 1, that fail with a 503. */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  /** Object content: a block of bytes, repeated until the object has its size. */
+  private record ObjectContent(byte[] block, long size) {
+
+    void write(OutputStream out, long start, long length, long bytesPerSecond) throws IOException {
+      long startNanos = System.nanoTime();
+      long position = start;
+      long end = start + length;
+      while (position < end) {
+        int offset = (int) (position % block.length);
+        int count = (int) Math.min(block.length - offset, end - position);
+        out.write(block, offset, count);
+        position += count;
+        if (bytesPerSecond > 0) {
+          pace(startNanos, position - start, bytesPerSecond);
+        }
+      }
+    }
+
+    private static void pace(long startNanos, long sent, long bytesPerSecond) throws IOException {
+      long dueNanos = startNanos + (long) (sent * 1e9 / bytesPerSecond);
+      long waitNanos = dueNanos - System.nanoTime();
+      if (waitNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted sending a download");
+        }
+      }
+    }
+  }
+
+  /** Number of distinct client connections accepted so far. */
+  public long getConnectionCount() {
+    return clientConnections.size();
+  }
+
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  public void resetCounts() {
+    clientConnections.clear();
+    requests.set(0);
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    // Every new TCP connection arrives from a new client port.
+    clientConnections.add(exchange.getRemoteAddress());
+    requests.incrementAndGet();
+    try (exchange) {
+      FakeApiServer.sleep(latency);
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        sendEmpty(exchange, 503);
+        return;
+      }
+      Matcher path = OBJECT_PATH.matcher(exchange.getRequestURI().getRawPath());
+      if (!path.matches()) {
+        sendEmpty(exchange, 404);
+        return;
+      }
+      String bucket = decode(path.group(1));
+      String object = decode(path.group(2));
+      ObjectContent content = objects.get(bucket + "/" + object);
+      if (content == null) {
+        sendEmpty(exchange, 404);
+        return;
+      }
+      String query = exchange.getRequestURI().getRawQuery();
+      if (query != null && query.contains("alt=media")) {
+        sendMedia(exchange, content);
+      } else {
+        sendMetadata(exchange, bucket, object, content);
+      }
+    }
+  }
+
+  private void sendMetadata(
+      HttpExchange exchange, String bucket, String object, ObjectContent content)
+      throws IOException {
+    String json =
+        String.format(
+            "{\"kind\":\"storage#object\",\"bucket\":\"%s\",\"name\":\"%s\",\"size\":\"%d\","
+                + "\"generation\":\"%d\",\"metageneration\":\"1\","
+                + "\"contentType\":\"application/octet-stream\",\"etag\":\"CAE=\","
+                + "\"updated\":\"2023-01-01T00:00:00.000Z\"}",
+            bucket, object, content.size(), GENERATION);
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private void sendMedia(HttpExchange exchange, ObjectContent content) throws IOException {
+    long start = 0;
+    long end = content.size() - 1;
+    int status = 200;
+    String rangeHeader = exchange.getRequestHeaders().getFirst("Range");
+    if (rangeHeader != null) {
+      Matcher range = RANGE.matcher(rangeHeader);
+      if (range.matches()) {
+        start = Long.parseLong(range.group(1));
+        if (!range.group(2).isEmpty()) {
+          end = Math.min(end, Long.parseLong(range.group(2)));
+        }
+        if (start >= content.size()) {
+          exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.size());
+          sendEmpty(exchange, 416);
+          return;
+        }
+        status = 206;
+        exchange
+            .getResponseHeaders()
+            .set("Content-Range", "bytes " + start + "-" + end + "/" + content.size());
+      }
+    }
+    long length = end - start + 1;
+    exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+    exchange.getResponseHeaders().set("x-goog-generation", Long.toString(GENERATION));
+    exchange.getResponseHeaders().set("x-goog-metageneration", "1");
+    exchange.getResponseHeaders().set("x-goog-stored-content-length", "" + content.size());
+    exchange.getResponseHeaders().set("x-goog-stored-content-encoding", "identity");
+    exchange.getResponseHeaders().set("ETag", "\"CAE=\"");
+    exchange.sendResponseHeaders(status, length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      content.write(out, start, length, downloadBytesPerSecond);
+    }
+  }
+
+  private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+    exchange.sendResponseHeaders(status, -1);
+  }
+
+  private static String decode(String value) {
+    return URLDecoder.decode(value, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,661 @@
+package bio.terra.axonserver.benchmarks;
+
+import bio.terra.axonserver.app.App;
+import bio.terra.axonserver.app.configuration.FileConfiguration;
+import bio.terra.axonserver.app.configuration.GcsConfiguration;
+import bio.terra.axonserver.service.gcs.StorageClientFactory;
+import bio.terra.axonserver.service.gcs.UrlSigner;
+import bio.terra.axonserver.utils.DownstreamMetrics;
+import com.google.auth.oauth2.ServiceAccountCredentials;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Load test of the file endpoints. It starts the service against in-process stand-ins for WSM, Sam,
+ * Calhoun and GCS, with configurable latency and error injection, drives a mix of whole file reads,
+ * range reads, conversions and signed URL requests from many clients at once, and reports
+ * throughput and latency per kind of request, thread and heap use, and the time spent in each
+ * downstream call. Nothing leaves the machine. Run it with:
+ *
+ * <pre>
+ *   ./gradlew :benchmarks:fileLoadTest -PloadTestArgs="clients=64 durationSeconds=60"
+ * </pre>
+ *
+ * <p>Arguments are name=value pairs; see {@link Options} for the names and defaults. The stand-ins
+ * and the clients run in the same JVM as the service, so the thread and heap figures include them.
+ * Signing goes to IAM, which has no stand-in; URLs are signed locally instead, after the IAM
+ * latency.
+ */
+public class FileLoadTest {
+
+  private static final String PROJECT = "load-test-project";
+  private static final String BUCKET = "load-test-bucket";
+  private static final String FILE = "file.bin";
+  private static final String LARGE_FILE = "large.bin";
+  private static final int NOTEBOOKS = 20;
+  private static final UUID WORKSPACE_ID = UUID.randomUUID();
+  private static final UUID RESOURCE_ID = UUID.randomUUID();
+
+  /** Kinds of request the clients send. */
+  private enum Kind {
+    FULL,
+    RANGE,
+    CONVERT,
+    SIGNED_URL
+  }
+
+  /** Test settings, read from name=value arguments. */
+  private record Options(
+      int clients,
+      int users,
+      int warmupSeconds,
+      int durationSeconds,
+      Map<Kind, Integer> mix,
+      int fileSize,
+      long largeFileSize,
+      int rangeSize,
+      Duration wsmLatency,
+      Duration samLatency,
+      Duration calhounLatency,
+      Duration gcsLatency,
+      Duration iamLatency,
+      double errorRate) {
+
+    static Options parse(String[] args) {
+      Map<String, String> values = new HashMap<>();
+      for (String arg : args) {
+        String[] pair = arg.split("=", 2);
+        if (pair.length != 2) {
+          throw new IllegalArgumentException("Expected name=value, got " + arg);
+        }
+        values.put(pair[0], pair[1]);
+      }
+      Map<Kind, Integer> mix = new EnumMap<>(Kind.class);
+      mix.put(Kind.FULL, integer(values, "fullWeight", 40));
+      mix.put(Kind.RANGE, integer(values, "rangeWeight", 40));
+      mix.put(Kind.CONVERT, integer(values, "convertWeight", 10));
+      mix.put(Kind.SIGNED_URL, integer(values, "signedUrlWeight", 10));
+      Options options =
+          new Options(
+              integer(values, "clients", 32),
+              integer(values, "users", 20),
+              integer(values, "warmupSeconds", 10),
+              integer(values, "durationSeconds", 30),
+              mix,
+              integer(values, "fileSize", 1024 * 1024),
+              Long.parseLong(values.getOrDefault("largeFileSize", "1073741824")),
+              integer(values, "rangeSize", 65536),
+              millis(values, "wsmLatencyMillis", 20),
+              millis(values, "samLatencyMillis", 30),
+              millis(values, "calhounLatencyMillis", 500),
+              millis(values, "gcsLatencyMillis", 15),
+              millis(values, "iamLatencyMillis", 50),
+              Double.parseDouble(values.getOrDefault("errorRate", "0")));
+      Set<String> known =
+          Set.of(
+              "clients",
+              "users",
+              "warmupSeconds",
+              "durationSeconds",
+              "fullWeight",
+              "rangeWeight",
+              "convertWeight",
+              "signedUrlWeight",
+              "fileSize",
+              "largeFileSize",
+              "rangeSize",
+              "wsmLatencyMillis",
+              "samLatencyMillis",
+              "calhounLatencyMillis",
+              "gcsLatencyMillis",
+              "iamLatencyMillis",
+              "errorRate");
+      values.keySet().stream()
+          .filter(name -> !known.contains(name))
+          .findFirst()
+          .ifPresent(
+              name -> {
+                throw new IllegalArgumentException("Unknown argument " + name);
+              });
+      return options;
+    }
+
+    private static int integer(Map<String, String> values, String name, int defaultValue) {
+      return Integer.parseInt(values.getOrDefault(name, Integer.toString(defaultValue)));
+    }
+
+    private static Duration millis(Map<String, String> values, String name, int defaultValue) {
+      return Duration.ofMillis(integer(values, name, defaultValue));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = Options.parse(args);
+    try (FakeApiServer wsm = startWsm();
+        FakeApiServer sam = startSam();
+        FakeApiServer calhoun = startCalhoun();
+        FakeGcsServer gcs = startGcs(options)) {
+      wsm.setLatency(options.wsmLatency());
+      sam.setLatency(options.samLatency());
+      calhoun.setLatency(options.calhounLatency());
+      gcs.setLatency(options.gcsLatency());
+      for (FakeApiServer server : List.of(wsm, sam, calhoun)) {
+        server.setErrorRate(options.errorRate());
+      }
+      gcs.setErrorRate(options.errorRate());
+
+      // As App.main does, so that object paths may contain encoded slashes
+      System.setProperty("org.apache.tomcat.util.buf.UDecoder.ALLOW_ENCODED_SLASH", "true");
+      ConfigurableApplicationContext app =
+          // Passed as arguments, which take precedence over application.yml
+          new SpringApplicationBuilder(App.class, LoadTestConfiguration.class)
+              .run(
+                  "--server.port=0",
+                  "--server.tomcat.mbeanregistry.enabled=true",
+                  "--management.server.port=-1",
+                  "--env.wsm.basePath=" + wsm.getBaseUrl(),
+                  "--env.sam.basePath=" + sam.getBaseUrl(),
+                  "--env.calhoun.basePath=" + calhoun.getBaseUrl(),
+                  "--axonserver.gcs.host=" + gcs.getHost(),
+                  "--axonserver.status-check.enabled=false",
+                  "--spring.cloud.gcp.credentials.location=",
+                  "--loadtest.iamLatencyMillis=" + options.iamLatency().toMillis());
+      try {
+        int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+        System.out.printf(
+            "%d clients as %d users, mix %s, error rate %.3f%n",
+            options.clients(), options.users(), options.mix(), options.errorRate());
+        System.out.printf(
+            "latency: wsm %d ms, sam %d ms, calhoun %d ms, gcs %d ms, iam %d ms%n%n",
+            options.wsmLatency().toMillis(),
+            options.samLatency().toMillis(),
+            options.calhounLatency().toMillis(),
+            options.gcsLatency().toMillis(),
+            options.iamLatency().toMillis());
+        run(options, "http://127.0.0.1:" + port, app.getBean(MeterRegistry.class));
+        System.out.printf(
+            "%nrequests to stand-ins: wsm %d, sam %d, calhoun %d, gcs %d%n",
+            wsm.getRequestCount(),
+            sam.getRequestCount(),
+            calhoun.getRequestCount(),
+            gcs.getRequestCount());
+      } finally {
+        app.close();
+      }
+    }
+    System.exit(0);
+  }
+
+  private static FakeApiServer startWsm() throws IOException {
+    return new FakeApiServer()
+        .route(
+            "GET",
+            "/api/workspaces/v1/([^/]+)/resources/([^/]+)",
+            request ->
+                FakeApiServer.Response.json(
+                    String.format(
+                        "{\"metadata\":{\"workspaceId\":\"%s\",\"resourceId\":\"%s\","
+                            + "\"name\":\"bucket\",\"resourceType\":\"GCS_BUCKET\"},"
+                            + "\"resourceAttributes\":{\"gcpGcsBucket\":{\"bucketName\":\"%s\"}}}",
+                        request.path().group(1), request.path().group(2), BUCKET)))
+        .route(
+            "GET",
+            "/api/workspaces/v1/([^/]+)",
+            request ->
+                FakeApiServer.Response.json(
+                    String.format(
+                        "{\"id\":\"%s\",\"gcpContext\":{\"projectId\":\"%s\"}}",
+                        request.path().group(1), PROJECT)));
+  }
+
+  /** Sam gives each user their own pet, named after a hash of the user's token. */
+  private static FakeApiServer startSam() throws IOException {
+    return new FakeApiServer()
+        .route(
+            "POST",
+            "/api/google/v1/user/petServiceAccount/([^/]+)/token",
+            request -> FakeApiServer.Response.json("\"" + petName(request) + "-token\""))
+        .route(
+            "GET",
+            "/api/google/v1/user/petServiceAccount/([^/]+)",
+            request ->
+                FakeApiServer.Response.json(
+                    "\""
+                        + petName(request)
+                        + "@"
+                        + request.path().group(1)
+                        + ".iam.gserviceaccount.com\""));
+  }
+
+  private static String petName(FakeApiServer.Request request) {
+    return "pet-" + Integer.toHexString(String.valueOf(request.authorization()).hashCode());
+  }
+
+  /** Calhoun answers with a page about as large as the notebook, once it has converted it. */
+  private static FakeApiServer startCalhoun() throws IOException {
+    FakeApiServer.Handler convert =
+        request -> {
+          byte[] page = new byte[request.body().length + 64];
+          Arrays.fill(page, (byte) 'x');
+          return new FakeApiServer.Response(200, "text/html", page);
+        };
+    return new FakeApiServer()
+        .route("POST", "/api/convert", convert)
+        .route("POST", "/api/convert/rmd", convert);
+  }
+
+  private static FakeGcsServer startGcs(Options options) throws IOException {
+    FakeGcsServer gcs = new FakeGcsServer();
+    byte[] file = new byte[options.fileSize()];
+    new Random(0).nextBytes(file);
+    gcs.putObject(BUCKET, FILE, file);
+    byte[] block = new byte[1024 * 1024];
+    new Random(1).nextBytes(block);
+    gcs.putRepeatingObject(BUCKET, LARGE_FILE, block, options.largeFileSize());
+    byte[] notebook =
+        ("{\"cells\":[{\"cell_type\":\"markdown\",\"source\":[\""
+                + "x".repeat(32 * 1024)
+                + "\"]}]}")
+            .getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < NOTEBOOKS; i++) {
+      gcs.putObject(BUCKET, notebookName(i), notebook);
+    }
+    return gcs;
+  }
+
+  private static String notebookName(int index) {
+    return "notebook-" + index + ".ipynb";
+  }
+
+  /** Latencies of the requests of one kind, in nanoseconds. */
+  private static class Samples {
+    private long[] latencies = new long[1024];
+    private int count;
+    private long errors;
+    private long bytes;
+
+    void add(long latency) {
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = latency;
+    }
+
+    void addAll(Samples other) {
+      for (int i = 0; i < other.count; i++) {
+        add(other.latencies[i]);
+      }
+      errors += other.errors;
+      bytes += other.bytes;
+    }
+
+    double percentileMillis(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100 * count) - 1;
+      return sorted[Math.max(0, index)] / 1e6;
+    }
+  }
+
+  /** Sends requests in a loop, and keeps the samples of those started in the measured period. */
+  private static class Client extends Thread {
+
+    private final Options options;
+    private final String baseUrl;
+    private final HttpClient httpClient;
+    private final String authorization;
+    private final List<Kind> weightedKinds;
+    private final long measureStartNanos;
+    private final long endNanos;
+    private final Map<Kind, Samples> samples = new EnumMap<>(Kind.class);
+
+    Client(
+        Options options,
+        String baseUrl,
+        HttpClient httpClient,
+        String user,
+        List<Kind> weightedKinds,
+        long measureStartNanos,
+        long endNanos) {
+      this.options = options;
+      this.baseUrl = baseUrl;
+      this.httpClient = httpClient;
+      this.authorization = "Bearer " + user;
+      this.weightedKinds = weightedKinds;
+      this.measureStartNanos = measureStartNanos;
+      this.endNanos = endNanos;
+      for (Kind kind : Kind.values()) {
+        samples.put(kind, new Samples());
+      }
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      byte[] buffer = new byte[65536];
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      long start;
+      while ((start = System.nanoTime()) < endNanos) {
+        Kind kind = weightedKinds.get(random.nextInt(weightedKinds.size()));
+        HttpRequest request = buildRequest(kind, random);
+        boolean succeeded;
+        long bytes = 0;
+        try {
+          HttpResponse<InputStream> response =
+              httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+          try (InputStream body = response.body()) {
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+              bytes += read;
+            }
+          }
+          succeeded = response.statusCode() / 100 == 2;
+        } catch (IOException e) {
+          succeeded = false;
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (start >= measureStartNanos) {
+          Samples kindSamples = samples.get(kind);
+          kindSamples.add(System.nanoTime() - start);
+          kindSamples.bytes += bytes;
+          if (!succeeded) {
+            kindSamples.errors++;
+          }
+        }
+      }
+    }
+
+    private HttpRequest buildRequest(Kind kind, ThreadLocalRandom random) {
+      String resource =
+          baseUrl + "/api/workspaces/v1/" + WORKSPACE_ID + "/resources/" + RESOURCE_ID;
+      HttpRequest.Builder request =
+          HttpRequest.newBuilder().header("Authorization", authorization).GET();
+      switch (kind) {
+        case FULL -> request.uri(URI.create(resource + "/file/objects/" + FILE));
+        case RANGE -> {
+          long ranges = options.largeFileSize() / options.rangeSize();
+          long start = random.nextLong(ranges) * options.rangeSize();
+          request
+              .uri(URI.create(resource + "/file/objects/" + LARGE_FILE))
+              .header("Range", "bytes=" + start + "-" + (start + options.rangeSize() - 1));
+        }
+        case CONVERT -> request.uri(
+            URI.create(
+                resource
+                    + "/file/objects/"
+                    + notebookName(random.nextInt(NOTEBOOKS))
+                    + "?convertTo=html"));
+        case SIGNED_URL -> request.uri(URI.create(resource + "/signedUrl/objects/" + FILE));
+      }
+      return request.build();
+    }
+  }
+
+  /** Peaks of thread and heap use, sampled while the test runs. */
+  private static class ResourceSampler implements Runnable {
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    private final AtomicLong peakHeapBytes = new AtomicLong();
+    private volatile int peakBusyRequestThreads;
+    private volatile int maxRequestThreads;
+
+    @Override
+    public void run() {
+      peakHeapBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+      try {
+        for (ObjectName pool :
+            mBeanServer.queryNames(new ObjectName("Tomcat:type=ThreadPool,*"), null)) {
+          int busy = (Integer) mBeanServer.getAttribute(pool, "currentThreadsBusy");
+          peakBusyRequestThreads = Math.max(peakBusyRequestThreads, busy);
+          maxRequestThreads = (Integer) mBeanServer.getAttribute(pool, "maxThreads");
+        }
+      } catch (Exception e) {
+        // The Tomcat pool is not registered; only JVM wide figures are reported
+      }
+    }
+  }
+
+  private static void run(Options options, String baseUrl, MeterRegistry meterRegistry)
+      throws InterruptedException {
+    List<Kind> weightedKinds = new ArrayList<>();
+    options
+        .mix()
+        .forEach((kind, weight) -> weightedKinds.addAll(Collections.nCopies(weight, kind)));
+    HttpClient httpClient =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    ResourceSampler sampler = new ResourceSampler();
+    ScheduledExecutorService samplerExecutor = Executors.newSingleThreadScheduledExecutor();
+    long measureStartNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+    long endNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+    samplerExecutor.scheduleAtFixedRate(
+        sampler,
+        TimeUnit.NANOSECONDS.toMillis(measureStartNanos - System.nanoTime()),
+        200,
+        TimeUnit.MILLISECONDS);
+
+    List<Client> clients = new ArrayList<>();
+    for (int i = 0; i < options.clients(); i++) {
+      Client client =
+          new Client(
+              options,
+              baseUrl,
+              httpClient,
+              "load-test-user-" + (i % options.users()),
+              weightedKinds,
+              measureStartNanos,
+              endNanos);
+      clients.add(client);
+      client.start();
+    }
+    int peakThreads = 0;
+    while (System.nanoTime() < endNanos) {
+      TimeUnit.MILLISECONDS.sleep(200);
+      peakThreads = Math.max(peakThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+    for (Client client : clients) {
+      client.join();
+    }
+    samplerExecutor.shutdownNow();
+
+    Map<Kind, Samples> totals = new EnumMap<>(Kind.class);
+    for (Kind kind : Kind.values()) {
+      Samples total = new Samples();
+      clients.forEach(client -> total.addAll(client.samples.get(kind)));
+      totals.put(kind, total);
+    }
+    printResults(options, totals);
+
+    System.gc();
+    System.out.printf(
+        "%npeak threads %d, peak busy request threads %d of %d%n",
+        peakThreads, sampler.peakBusyRequestThreads, sampler.maxRequestThreads);
+    System.out.printf(
+        "peak heap used %d MB, after GC %d MB%n",
+        sampler.peakHeapBytes.get() / (1024 * 1024),
+        ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024));
+    printDownstreamCalls(meterRegistry);
+    printBulkheadRejections(meterRegistry);
+  }
+
+  private static void printResults(Options options, Map<Kind, Samples> totals) {
+    double seconds = options.durationSeconds();
+    System.out.printf(
+        "%-11s %9s %7s %9s %9s %9s %9s %9s%n",
+        "request", "count", "errors", "req/s", "MB/s", "p50 ms", "p99 ms", "max ms");
+    totals.forEach(
+        (kind, samples) ->
+            System.out.printf(
+                "%-11s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                kind.name().toLowerCase(),
+                samples.count,
+                samples.errors,
+                samples.count / seconds,
+                samples.bytes / seconds / (1024 * 1024),
+                samples.percentileMillis(50),
+                samples.percentileMillis(99),
+                samples.percentileMillis(100)));
+  }
+
+  /** Time the service spent in each downstream call, from its own metrics. */
+  private static void printDownstreamCalls(MeterRegistry meterRegistry) {
+    System.out.printf(
+        "%n%-9s %-22s %-8s %9s %9s%n", "service", "operation", "outcome", "calls", "mean ms");
+    meterRegistry.find(DownstreamMetrics.TIMER_NAME).timers().stream()
+        .sorted(
+            Comparator.comparing(
+                (Timer timer) ->
+                    timer.getId().getTag("downstream")
+                        + timer.getId().getTag("operation")
+                        + timer.getId().getTag("outcome")))
+        .forEach(
+            timer ->
+                System.out.printf(
+                    "%-9s %-22s %-8s %9d %9.1f%n",
+                    timer.getId().getTag("downstream"),
+                    timer.getId().getTag("operation"),
+                    timer.getId().getTag("outcome"),
+                    timer.count(),
+                    timer.mean(TimeUnit.MILLISECONDS)));
+  }
+
+  /** Calls the service rejected because their downstream service had too many in progress. */
+  private static void printBulkheadRejections(MeterRegistry meterRegistry) {
+    System.out.printf("%n%-9s %-22s %9s%n", "service", "rejected because", "calls");
+    meterRegistry.find("bulkhead.rejected").counters().stream()
+        .filter(counter -> counter.count() > 0)
+        .sorted(
+            Comparator.comparing(
+                (Counter counter) ->
+                    counter.getId().getTag("downstream") + counter.getId().getTag("reason")))
+        .forEach(
+            counter ->
+                System.out.printf(
+                    "%-9s %-22s %9.0f%n",
+                    counter.getId().getTag("downstream"),
+                    counter.getId().getTag("reason"),
+                    counter.count()));
+  }
+
+  /**
+   * Signs URLs locally with a key made up for the test, after the latency of the IAM call that
+   * signing as a pet takes.
+   */
+  @Configuration
+  static class LoadTestConfiguration {
+
+    @Bean
+    @Primary
+    UrlSigner localUrlSigner(
+        GcsConfiguration gcsConfig,
+        FileConfiguration fileConfig,
+        StorageClientFactory storageClientFactory,
+        MeterRegistry meterRegistry,
+        @Value("${loadtest.iamLatencyMillis:0}") long iamLatencyMillis)
+        throws GeneralSecurityException {
+      return new LocalUrlSigner(
+          gcsConfig,
+          fileConfig,
+          storageClientFactory,
+          meterRegistry,
+          Duration.ofMillis(iamLatencyMillis));
+    }
+  }
+
+  private static class LocalUrlSigner extends UrlSigner {
+
+    private final Duration iamLatency;
+    private final PrivateKey privateKey;
+    private final Storage storage =
+        StorageOptions.newBuilder()
+            .setProjectId(PROJECT)
+            .setCredentials(NoCredentials.getInstance())
+            .build()
+            .getService();
+
+    LocalUrlSigner(
+        GcsConfiguration gcsConfig,
+        FileConfiguration fileConfig,
+        StorageClientFactory storageClientFactory,
+        MeterRegistry meterRegistry,
+        Duration iamLatency)
+        throws GeneralSecurityException {
+      super(gcsConfig, fileConfig, storageClientFactory, meterRegistry);
+      this.iamLatency = iamLatency;
+      KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+      generator.initialize(2048);
+      this.privateKey = generator.generateKeyPair().getPrivate();
+    }
+
+    @Override
+    protected URL signBlob(
+        String projectId, String petSaEmail, BlobInfo blobInfo, long durationMinutes)
+        throws IOException {
+      FakeApiServer.sleep(iamLatency);
+      return storage.signUrl(
+          blobInfo,
+          durationMinutes,
+          TimeUnit.MINUTES,
+          Storage.SignUrlOption.withV4Signature(),
+          Storage.SignUrlOption.signWith(
+              ServiceAccountCredentials.newBuilder()
+                  .setClientEmail(petSaEmail)
+                  .setPrivateKey(privateKey)
+                  .build()));
+    }
+  }
+}
@@ -0,0 +1,236 @@
+package bio.terra.axonserver.benchmarks;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import bio.terra.axonserver.app.configuration.BlockCacheConfiguration;
+import bio.terra.axonserver.app.configuration.BulkheadConfiguration;
+import bio.terra.axonserver.app.configuration.FileConfiguration;
+import bio.terra.axonserver.app.configuration.GcsConfiguration;
+import bio.terra.axonserver.app.controller.GetFileController;
+import bio.terra.axonserver.service.convert.ConversionCache;
+import bio.terra.axonserver.service.convert.ConvertService;
+import bio.terra.axonserver.service.file.FileService;
+import bio.terra.axonserver.service.gcs.BlockCache;
+import bio.terra.axonserver.service.gcs.GcsBulkhead;
+import bio.terra.axonserver.service.gcs.ObjectMetadataCache;
+import bio.terra.axonserver.service.gcs.StorageClientFactory;
+import bio.terra.axonserver.service.gcs.UrlSigner;
+import bio.terra.axonserver.service.iam.SamService;
+import bio.terra.axonserver.service.wsm.WorkspaceManagerService;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import bio.terra.common.iam.BearerToken;
+import bio.terra.common.iam.BearerTokenFactory;
+import bio.terra.workspace.model.GcpContext;
+import bio.terra.workspace.model.GcpGcsBucketAttributes;
+import bio.terra.workspace.model.ResourceAttributesUnion;
+import bio.terra.workspace.model.ResourceDescription;
+import bio.terra.workspace.model.ResourceMetadata;
+import bio.terra.workspace.model.ResourceType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Measures the throughput of file requests through {@link GetFileController}, from the lookups to
+ * the last byte of the response body, with several requests in flight. WSM, Sam and the bearer
+ * token are stubbed to answer at once, and objects are served by the fake GCS server, so the
+ * numbers are the service's own overhead plus a loopback download. Spring MVC's dispatch is not
+ * included: each request calls the controller directly and reads the body it returns.
+ *
+ * <p>Range requests ask for 64 KiB ranges spread over the object, in turn, so with the block cache
+ * enabled they are served from memory once the first pass over the object has cached it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(8)
+@State(Scope.Benchmark)
+public class FileRequestBenchmark {
+
+  private static final String BUCKET = "bucket";
+  private static final String OBJECT = "object.bin";
+  private static final UUID WORKSPACE_ID = UUID.randomUUID();
+  private static final UUID RESOURCE_ID = UUID.randomUUID();
+  private static final int RANGE_LENGTH = 65536;
+  private static final int RANGES_PER_OBJECT = 64;
+
+  @Param({"65536", "16777216"})
+  public long objectSize;
+
+  @Param({"file", "range"})
+  public String requestKind;
+
+  @Param({"false", "true"})
+  public boolean blockCacheEnabled;
+
+  private FakeGcsServer server;
+  private StorageClientFactory storageClientFactory;
+  private FileService fileService;
+  private WorkspaceManagerService wsmService;
+  private BearerTokenFactory bearerTokenFactory;
+  private FileConfiguration fileConfig;
+  private SimpleMeterRegistry meterRegistry;
+
+  /** Per-thread position in the ranges of the object. */
+  @State(Scope.Thread)
+  public static class RangeCursor {
+    private int next;
+
+    String nextRange(long objectSize) {
+      long stride = Math.max(RANGE_LENGTH, objectSize / RANGES_PER_OBJECT);
+      long start = (next++ % RANGES_PER_OBJECT) * stride % objectSize;
+      long end = Math.min(objectSize, start + RANGE_LENGTH) - 1;
+      return "bytes=" + start + "-" + end;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    server = new FakeGcsServer();
+    byte[] block = new byte[1024 * 1024];
+    new Random(0).nextBytes(block);
+    server.putRepeatingObject(BUCKET, OBJECT, block, objectSize);
+    meterRegistry = new SimpleMeterRegistry();
+    GcsConfiguration gcsConfig =
+        new GcsConfiguration(
+            server.getHost(),
+            200,
+            20000,
+            20000,
+            1000,
+            600,
+            30,
+            1000,
+            new BulkheadConfiguration(150, 100, 2000, 5));
+    storageClientFactory = new StorageClientFactory(gcsConfig, meterRegistry);
+    // The defaults of application.yml, without asynchronous streaming, which needs a container
+    fileConfig =
+        new FileConfiguration(
+            50,
+            65536,
+            32,
+            false,
+            3600,
+            2097152,
+            65536,
+            false,
+            64,
+            true,
+            67108864,
+            8388608,
+            4,
+            32,
+            32,
+            1000,
+            32,
+            2000,
+            new BulkheadConfiguration(48, 48, 2000, 5),
+            64,
+            30);
+
+    // Stubs only, so that invocations are not recorded for verification as they pile up
+    wsmService = mock(WorkspaceManagerService.class, withSettings().stubOnly());
+    when(wsmService.getResource(anyString(), any(UUID.class), any(UUID.class)))
+        .thenReturn(
+            new ResourceDescription()
+                .metadata(new ResourceMetadata().resourceType(ResourceType.GCS_BUCKET))
+                .resourceAttributes(
+                    new ResourceAttributesUnion()
+                        .gcpGcsBucket(new GcpGcsBucketAttributes().bucketName(BUCKET))));
+    when(wsmService.getGcpContext(any(UUID.class), anyString()))
+        .thenReturn(new GcpContext().projectId("project"));
+    SamService samService = mock(SamService.class, withSettings().stubOnly());
+    when(samService.getPetAccessToken(anyString(), any(BearerToken.class)))
+        .thenReturn("pet-access-token");
+    bearerTokenFactory = mock(BearerTokenFactory.class, withSettings().stubOnly());
+    when(bearerTokenFactory.from(any(HttpServletRequest.class)))
+        .thenReturn(new BearerToken("user-token"));
+
+    GcsBulkhead gcsBulkhead = new GcsBulkhead(gcsConfig, meterRegistry);
+    fileService =
+        new FileService(
+            samService,
+            wsmService,
+            mock(ConvertService.class, withSettings().stubOnly()),
+            mock(ConversionCache.class, withSettings().stubOnly()),
+            storageClientFactory,
+            new ObjectMetadataCache(gcsConfig, gcsBulkhead, meterRegistry),
+            mock(UrlSigner.class, withSettings().stubOnly()),
+            new BlockCache(
+                new BlockCacheConfiguration(
+                    blockCacheEnabled,
+                    DataSize.ofKilobytes(256),
+                    DataSize.ofMegabytes(256),
+                    DataSize.ofMegabytes(4)),
+                gcsBulkhead,
+                meterRegistry),
+            gcsBulkhead,
+            fileConfig);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    fileService.shutdown();
+    storageClientFactory.shutdown();
+    server.close();
+  }
+
+  @Benchmark
+  public long request(RangeCursor cursor) throws IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    if (requestKind.equals("range")) {
+      request.addHeader("Range", cursor.nextRange(objectSize));
+    }
+    GetFileController controller =
+        new GetFileController(
+            bearerTokenFactory,
+            request,
+            new MockHttpServletResponse(),
+            fileService,
+            wsmService,
+            fileConfig,
+            meterRegistry);
+    ResponseEntity<Resource> response =
+        controller.getFileInBucket(WORKSPACE_ID, RESOURCE_ID, OBJECT, null);
+
+    // Read the body through a buffer the size that responses are written with
+    byte[] writeBuffer = new byte[CloudStorageUtils.MAX_BUFFER_SIZE];
+    long total = 0;
+    try (InputStream body = response.getBody().getInputStream()) {
+      int read;
+      while ((read = body.read(writeBuffer)) != -1) {
+        total += read;
+      }
+    }
+    return total;
+  }
+}
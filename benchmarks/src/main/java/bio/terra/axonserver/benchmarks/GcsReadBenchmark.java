@@ -0,0 +1,119 @@
+package bio.terra.axonserver.benchmarks;
+
+import bio.terra.axonserver.app.configuration.BulkheadConfiguration;
+import bio.terra.axonserver.app.configuration.GcsConfiguration;
+import bio.terra.axonserver.service.gcs.StorageClientFactory;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import bio.terra.axonserver.utils.ReadAheadInputStream;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures downloading whole objects of different sizes from the fake GCS server, with different
+ * read chunk sizes and with and without read ahead. The content is copied through a buffer the size
+ * that the file endpoint writes responses with, optionally doing some work per write to stand in
+ * for a client. Divide the object size by the time per operation for throughput.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GcsReadBenchmark {
+
+  private static final String BUCKET = "bucket";
+  private static final String OBJECT = "object.bin";
+
+  @Param({"1048576", "104857600", "5368709120"})
+  public long objectSize;
+
+  @Param({"262144", "2097152", "16777216"})
+  public int chunkSize;
+
+  @Param({"false", "true"})
+  public boolean readAhead;
+
+  // Work done per write to the client, standing in for the cost of sending to a real client.
+  // Without it the reader never waits, and there is nothing for read ahead to overlap with.
+  @Param({"0", "20000"})
+  public long writeCostTokens;
+
+  private FakeGcsServer server;
+  private StorageClientFactory storageClientFactory;
+  private Storage storage;
+  private ExecutorService readAheadExecutor;
+  private byte[] writeBuffer;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    server = new FakeGcsServer();
+    byte[] block = new byte[1024 * 1024];
+    new Random(0).nextBytes(block);
+    server.putRepeatingObject(BUCKET, OBJECT, block, objectSize);
+    storageClientFactory =
+        new StorageClientFactory(
+            new GcsConfiguration(
+                server.getHost(),
+                200,
+                20000,
+                20000,
+                1000,
+                600,
+                30,
+                1000,
+                new BulkheadConfiguration(150, 100, 2000, 5)),
+            new SimpleMeterRegistry());
+    storage = storageClientFactory.getStorage("pet-access-token");
+    readAheadExecutor = Executors.newCachedThreadPool();
+    writeBuffer = new byte[CloudStorageUtils.MAX_BUFFER_SIZE];
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    readAheadExecutor.shutdownNow();
+    storageClientFactory.shutdown();
+    server.close();
+  }
+
+  @Benchmark
+  public long download() throws IOException {
+    // Sized as the file service sizes reads: never larger than the object
+    int readChunkSize = (int) Math.min(chunkSize, objectSize);
+    InputStream object =
+        CloudStorageUtils.getBucketObject(storage, BlobId.of(BUCKET, OBJECT), null, readChunkSize);
+    long total = 0;
+    try (InputStream content =
+        readAhead && objectSize > readChunkSize
+            ? new ReadAheadInputStream(object, readChunkSize, readAheadExecutor)
+            : object) {
+      int read;
+      while ((read = content.read(writeBuffer)) != -1) {
+        Blackhole.consumeCPU(writeCostTokens);
+        total += read;
+      }
+    }
+    return total;
+  }
+}
@@ -0,0 +1,109 @@
+package bio.terra.axonserver.benchmarks;
+
+import bio.terra.axonserver.service.file.RangeContentInputStream;
+import bio.terra.axonserver.utils.ByteRange;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import bio.terra.axonserver.utils.MultipartByteRanges;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpRange;
+
+/**
+ * Measures the CPU cost of range requests, apart from any I/O: parsing a Range header and resolving
+ * it against the object as the file endpoint does, and copying the ranges out of the spans read
+ * from GCS into a multipart body through the buffer responses are written with. The spans are
+ * already in memory, so the copy benchmark measures the stream layers alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RangeBenchmark {
+
+  private static final long OBJECT_SIZE = 1L << 30;
+  private static final int RANGE_LENGTH = 16384;
+  // The file endpoint's default
+  private static final int MERGE_GAP = 65536;
+
+  @Param({"1", "10", "50"})
+  public int rangeCount;
+
+  private String rangeHeader;
+  private List<ByteRange> ranges;
+  private List<ByteRange> spans;
+  private List<byte[]> spanContents;
+  private byte[] writeBuffer;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    // Ranges spread over the object, every other one close enough to the previous to share a span
+    Random random = new Random(0);
+    StringBuilder header = new StringBuilder("bytes=");
+    long start = 0;
+    for (int i = 0; i < rangeCount; i++) {
+      start += RANGE_LENGTH + (i % 2 == 0 ? random.nextInt(MERGE_GAP) : 4L * MERGE_GAP);
+      header.append(i == 0 ? "" : ",").append(start).append('-').append(start + RANGE_LENGTH - 1);
+    }
+    rangeHeader = header.toString();
+    ranges = parse();
+    spans = ByteRange.coalesce(ranges, MERGE_GAP);
+    spanContents = new ArrayList<>();
+    for (ByteRange span : spans) {
+      byte[] content = new byte[(int) span.length()];
+      random.nextBytes(content);
+      spanContents.add(content);
+    }
+    writeBuffer = new byte[CloudStorageUtils.MAX_BUFFER_SIZE];
+  }
+
+  /** Parse and resolve the Range header as the file endpoint does. */
+  @Benchmark
+  public List<ByteRange> parse() {
+    return ByteRange.coalesce(
+        HttpRange.parseRanges(rangeHeader).stream()
+            .flatMap(range -> ByteRange.resolve(range, OBJECT_SIZE).stream())
+            .toList(),
+        0);
+  }
+
+  /** Copy the ranges out of their spans into the response body. */
+  @Benchmark
+  public long copy() throws IOException {
+    List<InputStream> spanStreams =
+        spanContents.stream()
+            .map(content -> (InputStream) new ByteArrayInputStream(content))
+            .toList();
+    InputStream rangeContent = new RangeContentInputStream(ranges, spans, spanStreams);
+    long total = 0;
+    try (InputStream content =
+        ranges.size() > 1
+            ? new MultipartByteRanges(ranges, "application/octet-stream", OBJECT_SIZE)
+                .toInputStream(rangeContent)
+            : rangeContent) {
+      int read;
+      while ((read = content.read(writeBuffer)) != -1) {
+        total += read;
+      }
+    }
+    return total;
+  }
+}
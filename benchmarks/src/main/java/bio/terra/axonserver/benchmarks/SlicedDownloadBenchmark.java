@@ -0,0 +1,120 @@
+package bio.terra.axonserver.benchmarks;
+
+import bio.terra.axonserver.app.configuration.BulkheadConfiguration;
+import bio.terra.axonserver.app.configuration.GcsConfiguration;
+import bio.terra.axonserver.service.file.SlicedDownloader;
+import bio.terra.axonserver.service.gcs.GcsBulkhead;
+import bio.terra.axonserver.service.gcs.StorageClientFactory;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures downloading a whole object from the fake GCS server with a single read and with {@link
+ * SlicedDownloader}, with each GCS download limited to a rate as GCS limits it. Divide the object
+ * size by the time per operation for throughput.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlicedDownloadBenchmark {
+
+  private static final String BUCKET = "bucket";
+  private static final String OBJECT = "object.bin";
+  // The read chunk size that the file service uses for large files
+  private static final int SINGLE_READ_CHUNK_SIZE = 2 * 1024 * 1024;
+
+  @Param({"268435456"})
+  public long objectSize;
+
+  // Rate of each GCS download, or 0 for no limit
+  @Param({"0", "104857600"})
+  public long downloadBytesPerSecond;
+
+  // Slices read at a time, or 0 for a single read
+  @Param({"0", "2", "4", "8"})
+  public int slicesPerDownload;
+
+  @Param({"8388608"})
+  public int sliceSize;
+
+  private FakeGcsServer server;
+  private StorageClientFactory storageClientFactory;
+  private Storage storage;
+  private SlicedDownloader slicedDownloader;
+  private byte[] writeBuffer;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    server = new FakeGcsServer();
+    byte[] block = new byte[1024 * 1024];
+    new Random(0).nextBytes(block);
+    server.putRepeatingObject(BUCKET, OBJECT, block, objectSize);
+    server.setDownloadBytesPerSecond(downloadBytesPerSecond);
+    GcsConfiguration gcsConfig =
+        new GcsConfiguration(
+            server.getHost(),
+            200,
+            20000,
+            20000,
+            1000,
+            600,
+            30,
+            1000,
+            new BulkheadConfiguration(150, 100, 2000, 5));
+    storageClientFactory = new StorageClientFactory(gcsConfig, new SimpleMeterRegistry());
+    storage = storageClientFactory.getStorage("pet-access-token");
+    slicedDownloader =
+        new SlicedDownloader(
+            sliceSize,
+            Math.max(1, slicesPerDownload),
+            Math.max(1, slicesPerDownload),
+            8,
+            new GcsBulkhead(gcsConfig, new SimpleMeterRegistry()));
+    writeBuffer = new byte[CloudStorageUtils.MAX_BUFFER_SIZE];
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    slicedDownloader.shutdown();
+    storageClientFactory.shutdown();
+    server.close();
+  }
+
+  @Benchmark
+  public long download() throws IOException {
+    BlobId blobId = BlobId.of(BUCKET, OBJECT);
+    long total = 0;
+    try (InputStream content =
+        slicesPerDownload == 0
+            ? CloudStorageUtils.getBucketObject(storage, blobId, null, SINGLE_READ_CHUNK_SIZE)
+            : slicedDownloader.tryOpen(storage, blobId, objectSize)) {
+      int read;
+      while ((read = content.read(writeBuffer)) != -1) {
+        total += read;
+      }
+    }
+    return total;
+  }
+}
@@ -0,0 +1,225 @@
+package bio.terra.axonserver.benchmarks;
+
+import bio.terra.axonserver.utils.AsyncContentWriter;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Load test for serving files to many slow clients, comparing blocking writes, as Spring does for
+ * an InputStreamResource, with {@link AsyncContentWriter}. It starts an embedded Tomcat with a
+ * small request thread pool, connects many clients that each read a large file at a trickle, and
+ * then times a request for a small file. Run it with:
+ *
+ * <pre>
+ *   ./gradlew :benchmarks:slowConsumerLoadTest
+ * </pre>
+ *
+ * <p>With blocking writes only as many slow clients as there are request threads receive any bytes,
+ * and the small request waits until one of them finishes. With non-blocking writes every slow
+ * client is served and the small request is answered right away.
+ */
+public class SlowConsumerLoadTest {
+
+  private static final int REQUEST_THREADS = 16;
+  private static final int SLOW_CLIENTS = 200;
+  private static final int LARGE_FILE_SIZE = 64 * 1024 * 1024;
+  private static final int SMALL_FILE_SIZE = 1024;
+  // Each slow client reads this many bytes per tick
+  private static final int SLOW_READ_SIZE = 8 * 1024;
+  private static final Duration SLOW_READ_INTERVAL = Duration.ofMillis(100);
+  private static final Duration TEST_DURATION = Duration.ofSeconds(10);
+  private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(8);
+  private static final long SERVED_BYTES = 64 * 1024;
+
+  public static void main(String[] args) throws Exception {
+    byte[] largeFile = new byte[LARGE_FILE_SIZE];
+    new Random(0).nextBytes(largeFile);
+    byte[] smallFile = new byte[SMALL_FILE_SIZE];
+
+    System.out.printf(
+        "%d request threads, %d slow clients reading %d KB/s each, %d s%n%n",
+        REQUEST_THREADS,
+        SLOW_CLIENTS,
+        SLOW_READ_SIZE * 1000 / SLOW_READ_INTERVAL.toMillis() / 1024,
+        TEST_DURATION.toSeconds());
+    System.out.printf(
+        "%-12s %16s %16s %18s%n", "mode", "clients served", "MB delivered", "small file (ms)");
+    for (boolean async : new boolean[] {false, true}) {
+      Result result = run(async, largeFile, smallFile);
+      System.out.printf(
+          "%-12s %16s %16.1f %18s%n",
+          async ? "async" : "blocking",
+          result.clientsServed + "/" + SLOW_CLIENTS,
+          result.bytesDelivered / (1024.0 * 1024.0),
+          result.probeMillis < 0 ? "timed out" : Long.toString(result.probeMillis));
+    }
+    System.exit(0);
+  }
+
+  private record Result(int clientsServed, long bytesDelivered, long probeMillis) {}
+
+  private static Result run(boolean async, byte[] largeFile, byte[] smallFile) throws Exception {
+    Path baseDir = Files.createTempDirectory("slow-consumer-load-test");
+    Tomcat tomcat = startTomcat(baseDir, new FileServlet(async, largeFile, smallFile));
+    int port = tomcat.getConnector().getLocalPort();
+    try {
+      List<SlowClient> clients = new ArrayList<>();
+      for (int i = 0; i < SLOW_CLIENTS; i++) {
+        SlowClient client = new SlowClient(port);
+        clients.add(client);
+        client.start();
+      }
+      // Give the slow clients time to take up the request threads
+      TimeUnit.SECONDS.sleep(2);
+      long probeMillis = probe(port);
+      TimeUnit.MILLISECONDS.sleep(Math.max(0, TEST_DURATION.toMillis() - 2000 - probeMillis));
+
+      clients.forEach(SlowClient::interrupt);
+      for (SlowClient client : clients) {
+        client.join();
+      }
+      // Clients waiting for a request thread can still receive a few KB, so only clients that
+      // received more than that count as served.
+      int clientsServed =
+          (int) clients.stream().filter(client -> client.bytes.get() > SERVED_BYTES).count();
+      long bytesDelivered = clients.stream().mapToLong(client -> client.bytes.get()).sum();
+      return new Result(clientsServed, bytesDelivered, probeMillis);
+    } finally {
+      tomcat.stop();
+      tomcat.destroy();
+      FileUtils.deleteQuietly(baseDir.toFile());
+    }
+  }
+
+  private static Tomcat startTomcat(Path baseDir, HttpServlet servlet) throws LifecycleException {
+    Tomcat tomcat = new Tomcat();
+    tomcat.setBaseDir(baseDir.toString());
+    tomcat.setPort(0);
+    Connector connector = tomcat.getConnector();
+    connector.setProperty("address", "127.0.0.1");
+    connector.setProperty("maxThreads", Integer.toString(REQUEST_THREADS));
+    // Small socket buffers, so that a slow client holds up the server within the first few writes
+    connector.setProperty("socket.txBufSize", "65536");
+    Context context = tomcat.addContext("", baseDir.toString());
+    Wrapper wrapper = Tomcat.addServlet(context, "file", servlet);
+    wrapper.setAsyncSupported(true);
+    context.addServletMappingDecoded("/*", "file");
+    tomcat.start();
+    return tomcat;
+  }
+
+  /** Time to download the small file, or -1 if it does not arrive in time. */
+  private static long probe(int port) throws IOException {
+    long start = System.nanoTime();
+    HttpURLConnection connection =
+        (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/small").openConnection();
+    connection.setConnectTimeout((int) PROBE_TIMEOUT.toMillis());
+    connection.setReadTimeout((int) PROBE_TIMEOUT.toMillis());
+    try (InputStream in = connection.getInputStream()) {
+      in.transferTo(OutputStream.nullOutputStream());
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    } catch (IOException e) {
+      return -1;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static class FileServlet extends HttpServlet {
+
+    private final boolean async;
+    private final byte[] largeFile;
+    private final byte[] smallFile;
+
+    FileServlet(boolean async, byte[] largeFile, byte[] smallFile) {
+      this.async = async;
+      this.largeFile = largeFile;
+      this.smallFile = smallFile;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+      byte[] file = request.getRequestURI().equals("/small") ? smallFile : largeFile;
+      response.setContentType("application/octet-stream");
+      response.setContentLengthLong(file.length);
+      InputStream content = new ByteArrayInputStream(file);
+      if (async) {
+        AsyncContentWriter.start(
+            request, content, Duration.ofMinutes(5), CloudStorageUtils.MAX_BUFFER_SIZE);
+      } else {
+        content.transferTo(response.getOutputStream());
+      }
+    }
+  }
+
+  /** Downloads the large file, reading a little at a time, until interrupted. */
+  private static class SlowClient extends Thread {
+
+    private final int port;
+    private final AtomicLong bytes = new AtomicLong();
+
+    SlowClient(int port) {
+      this.port = port;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try (Socket socket = new Socket()) {
+        socket.setReceiveBufferSize(SLOW_READ_SIZE);
+        // Socket reads cannot be interrupted, so wake up now and then to check for the end
+        socket.setSoTimeout(500);
+        socket.connect(new InetSocketAddress("127.0.0.1", port));
+        socket
+            .getOutputStream()
+            .write(
+                "GET /large HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[SLOW_READ_SIZE];
+        while (!isInterrupted()) {
+          int read;
+          try {
+            read = in.read(buffer);
+          } catch (SocketTimeoutException e) {
+            continue;
+          }
+          if (read == -1) {
+            return;
+          }
+          bytes.addAndGet(read);
+          Thread.sleep(SLOW_READ_INTERVAL.toMillis());
+        }
+      } catch (IOException | InterruptedException e) {
+        // Interrupted at the end of the test, or the server closed the connection
+      }
+    }
+  }
+}
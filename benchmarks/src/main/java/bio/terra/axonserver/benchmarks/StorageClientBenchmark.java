@@ -0,0 +1,131 @@
+package bio.terra.axonserver.benchmarks;
+
+import bio.terra.axonserver.app.configuration.BulkheadConfiguration;
+import bio.terra.axonserver.app.configuration.GcsConfiguration;
+import bio.terra.axonserver.service.gcs.StorageClientFactory;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Compares building a Storage client per request with the shared, pooled transport from {@link
+ * StorageClientFactory}. Besides throughput, the {@code connections} and {@code requests} counters
+ * report how many TCP connections the fake GCS server accepted for how many GCS requests. Run it
+ * with several threads (e.g. {@code -t 16}) to see connections being set up again once more
+ * requests are in flight than the JDK keeps idle connections for.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class StorageClientBenchmark {
+
+  private static final String BUCKET = "bucket";
+  private static final String OBJECT = "object.bin";
+  private static final String ACCESS_TOKEN = "pet-access-token";
+
+  @State(Scope.Benchmark)
+  public static class Gcs {
+    @Param({"1024", "1048576"})
+    public int objectSize;
+
+    FakeGcsServer server;
+    StorageClientFactory storageClientFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      server = new FakeGcsServer();
+      byte[] content = new byte[objectSize];
+      new Random(0).nextBytes(content);
+      server.putObject(BUCKET, OBJECT, content);
+      storageClientFactory =
+          new StorageClientFactory(
+              new GcsConfiguration(
+                  server.getHost(),
+                  200,
+                  20000,
+                  20000,
+                  1000,
+                  600,
+                  30,
+                  1000,
+                  new BulkheadConfiguration(150, 100, 2000, 5)),
+              new SimpleMeterRegistry());
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCounts() {
+      server.resetCounts();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      storageClientFactory.shutdown();
+      server.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Counters {
+    public long connections;
+    public long requests;
+
+    @TearDown(Level.Iteration)
+    public void tearDown(Gcs gcs, ThreadParams threadParams) {
+      // The server counts are global, so report them from a single thread only.
+      if (threadParams.getThreadIndex() == 0) {
+        connections = gcs.server.getConnectionCount();
+        requests = gcs.server.getRequestCount();
+      }
+    }
+  }
+
+  /** The previous behavior: a new Storage client, and so a new transport, for every read. */
+  @Benchmark
+  public long storagePerRequest(Gcs gcs, Counters counters) throws IOException {
+    Storage storage =
+        StorageOptions.newBuilder()
+            .setHost(gcs.server.getHost())
+            .setProjectId("project")
+            .setCredentials(CloudStorageUtils.getGoogleCredentialsFromToken(ACCESS_TOKEN))
+            .build()
+            .getService();
+    return readObject(storage);
+  }
+
+  @Benchmark
+  public long sharedTransport(Gcs gcs, Counters counters) throws IOException {
+    return readObject(gcs.storageClientFactory.getStorage(ACCESS_TOKEN));
+  }
+
+  private static long readObject(Storage storage) throws IOException {
+    try (InputStream in =
+        CloudStorageUtils.getBucketObject(storage, BlobId.of(BUCKET, OBJECT), null)) {
+      return in.transferTo(OutputStream.nullOutputStream());
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package bio.terra.axonserver.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Configuration of the local cache of GCS object content.
+ *
+ * @param enabled whether reads of small ranges are served through the cache
+ * @param blockSize size of the aligned blocks objects are cached in
+ * @param maximumSize total size of the blocks kept, outside of the heap
+ * @param maximumReadSize largest read served through the cache; larger reads go straight to GCS
+ */
+@ConfigurationProperties(prefix = "axonserver.block-cache")
+public record BlockCacheConfiguration(
+    boolean enabled, DataSize blockSize, DataSize maximumSize, DataSize maximumReadSize) {}
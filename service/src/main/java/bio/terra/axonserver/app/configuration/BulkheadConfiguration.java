@@ -0,0 +1,14 @@
+package bio.terra.axonserver.app.configuration;
+
+/**
+ * Limits on the calls made at the same time to one downstream service, so that a slow service only
+ * ties up the threads of the calls to it.
+ *
+ * @param maxConcurrentCalls maximum number of calls in flight
+ * @param maxQueuedCalls maximum number of calls waiting for one in flight to finish; calls beyond
+ *     it are rejected at once
+ * @param maxWaitMillis how long a call waits for one in flight to finish before it is rejected
+ * @param retryAfterSeconds how long clients of rejected requests are told to wait before retrying
+ */
+public record BulkheadConfiguration(
+    int maxConcurrentCalls, int maxQueuedCalls, int maxWaitMillis, int retryAfterSeconds) {}
@@ -2,5 +2,13 @@ package bio.terra.axonserver.app.configuration;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+/**
+ * Calhoun client configuration.
+ *
+ * @param basePath Calhoun base url
+ * @param httpClient connection pool settings for Calhoun calls
+ * @param bulkhead limits on the conversions made at the same time
+ */
 @ConfigurationProperties(prefix = "axonserver.calhoun")
-public record CalhounConfiguration(String basePath) {}
+public record CalhounConfiguration(
+    String basePath, HttpClientConfiguration httpClient, BulkheadConfiguration bulkhead) {}
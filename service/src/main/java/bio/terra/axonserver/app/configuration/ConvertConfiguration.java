@@ -0,0 +1,25 @@
+package bio.terra.axonserver.app.configuration;
+
+import javax.annotation.Nullable;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * File conversion configuration.
+ *
+ * @param memoryCacheMaximumSize total size of converted files kept in memory
+ * @param memoryCacheMaximumEntrySize largest converted file kept in memory; larger files are only
+ *     kept on disk
+ * @param diskCacheDirectory directory for converted files kept on disk; a directory under the
+ *     system temporary directory is used when unset
+ * @param diskCacheMaximumSize total size of converted files kept on disk
+ * @param sharedConversionWaitMillis longest a request waits for a conversion of the same file
+ *     requested by another request, before converting the file itself
+ */
+@ConfigurationProperties(prefix = "axonserver.convert")
+public record ConvertConfiguration(
+    DataSize memoryCacheMaximumSize,
+    DataSize memoryCacheMaximumEntrySize,
+    @Nullable String diskCacheDirectory,
+    DataSize diskCacheMaximumSize,
+    int sharedConversionWaitMillis) {}
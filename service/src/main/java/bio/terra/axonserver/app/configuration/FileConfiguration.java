@@ -0,0 +1,63 @@
+package bio.terra.axonserver.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * File serving configuration.
+ *
+ * @param maxRanges maximum number of ranges accepted in a single request, after overlapping ranges
+ *     are merged
+ * @param rangeMergeGapBytes ranges separated by at most this many bytes are read from GCS with a
+ *     single request, and the bytes between them are skipped
+ * @param rangeReadThreads number of threads shared by all requests for opening GCS reads in
+ *     parallel
+ * @param asyncStreamingEnabled write file content with non-blocking servlet output, so that a
+ *     request thread is not held while a client is slow to read
+ * @param asyncStreamingTimeoutSeconds time allowed for writing a file with non-blocking output
+ * @param readChunkSizeBytes buffer size for reading from GCS; reads of fewer bytes use a buffer of
+ *     their own length
+ * @param minReadChunkSizeBytes smallest buffer used for reading from GCS
+ * @param readAheadEnabled read the next chunk of a file from GCS while the current one is sent,
+ *     when a read spans more than one chunk
+ * @param readAheadThreads number of threads shared by all requests for reading ahead
+ * @param slicedDownloadEnabled read whole files of at least slicedDownloadThresholdBytes as slices
+ *     read from GCS in parallel
+ * @param slicedDownloadThresholdBytes smallest file read in slices
+ * @param sliceSizeBytes size of each slice
+ * @param slicesPerDownload largest number of slices a download holds, including the one being read
+ * @param maxBufferedSlices largest number of slices held in memory by all downloads together
+ * @param sliceReadThreads number of threads shared by all requests for reading slices
+ * @param maxSignedUrlsPerRequest maximum number of URLs signed in a single request
+ * @param signUrlThreads number of threads shared by all requests for signing URLs
+ * @param signUrlQueueSize largest number of URLs waiting for a signing thread, across all requests;
+ *     requests that would queue more are rejected
+ * @param signUrlBulkhead limits on the calls to the IAM credentials API signing URLs at the same
+ *     time
+ * @param lookupThreads number of threads shared by all requests for looking up resources and
+ *     credentials in parallel
+ * @param lookupTimeoutSeconds time allowed for looking up a resource and credentials before a file
+ *     is read
+ */
+@ConfigurationProperties(prefix = "axonserver.file")
+public record FileConfiguration(
+    int maxRanges,
+    int rangeMergeGapBytes,
+    int rangeReadThreads,
+    boolean asyncStreamingEnabled,
+    int asyncStreamingTimeoutSeconds,
+    int readChunkSizeBytes,
+    int minReadChunkSizeBytes,
+    boolean readAheadEnabled,
+    int readAheadThreads,
+    boolean slicedDownloadEnabled,
+    long slicedDownloadThresholdBytes,
+    int sliceSizeBytes,
+    int slicesPerDownload,
+    int maxBufferedSlices,
+    int sliceReadThreads,
+    int maxSignedUrlsPerRequest,
+    int signUrlThreads,
+    int signUrlQueueSize,
+    BulkheadConfiguration signUrlBulkhead,
+    int lookupThreads,
+    int lookupTimeoutSeconds) {}
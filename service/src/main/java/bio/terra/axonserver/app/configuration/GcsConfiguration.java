@@ -0,0 +1,31 @@
+package bio.terra.axonserver.app.configuration;
+
+import javax.annotation.Nullable;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Google Cloud Storage client configuration.
+ *
+ * @param host GCS endpoint override, e.g. a local GCS stand-in; the public endpoint is used when
+ *     unset
+ * @param maxConnections maximum number of pooled connections to GCS shared by all requests
+ * @param connectTimeoutMillis timeout for opening a connection to GCS
+ * @param readTimeoutMillis timeout for reading from an open connection to GCS
+ * @param clientCacheMaximumSize maximum number of per-credential Storage clients kept for reuse
+ * @param clientIdleSeconds how long an unused per-credential Storage client is kept
+ * @param metadataCacheTtlSeconds how long object metadata is reused for the same caller
+ * @param metadataCacheMaximumSize maximum number of cached object metadata entries
+ * @param bulkhead limits on the metadata requests, listings and object reads being opened at the
+ *     same time
+ */
+@ConfigurationProperties(prefix = "axonserver.gcs")
+public record GcsConfiguration(
+    @Nullable String host,
+    int maxConnections,
+    int connectTimeoutMillis,
+    int readTimeoutMillis,
+    long clientCacheMaximumSize,
+    int clientIdleSeconds,
+    int metadataCacheTtlSeconds,
+    long metadataCacheMaximumSize,
+    BulkheadConfiguration bulkhead) {}
@@ -0,0 +1,12 @@
+package bio.terra.axonserver.app.configuration;
+
+/**
+ * Connection pool settings for the HTTP client shared by all calls to one downstream service.
+ *
+ * @param maxConnections maximum number of connections in use or kept for reuse
+ * @param keepAliveSeconds how long an idle connection is kept for reuse
+ * @param connectTimeoutMillis timeout for opening a connection
+ * @param readTimeoutMillis timeout for reading from an open connection
+ */
+public record HttpClientConfiguration(
+    int maxConnections, int keepAliveSeconds, int connectTimeoutMillis, int readTimeoutMillis) {}
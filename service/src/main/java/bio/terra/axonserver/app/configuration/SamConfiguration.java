@@ -2,5 +2,28 @@ package bio.terra.axonserver.app.configuration;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+/**
+ * Sam client configuration.
+ *
+ * @param basePath Sam base url
+ * @param resourceId Sam resource id of this service
+ * @param petTokenLifetimeSeconds lifetime of the pet service account access tokens Sam issues
+ * @param petTokenExpiryMarginSeconds how long before the end of its lifetime a pet token is treated
+ *     as expired. Sam's response does not say when a token expires, and Sam may return a token it
+ *     issued a while ago, so this covers the part of the lifetime already used plus clock skew.
+ * @param petTokenRefreshSeconds age after which a cached pet token is refreshed in the background
+ *     while the current token keeps being served; must be shorter than the lifetime less the margin
+ * @param petTokenCacheMaximumSize maximum number of cached pet tokens
+ * @param httpClient connection pool settings for Sam calls
+ * @param bulkhead limits on the Sam calls made at the same time
+ */
 @ConfigurationProperties(prefix = "axonserver.sam")
-public record SamConfiguration(String basePath, String resourceId) {}
+public record SamConfiguration(
+    String basePath,
+    String resourceId,
+    int petTokenLifetimeSeconds,
+    int petTokenExpiryMarginSeconds,
+    int petTokenRefreshSeconds,
+    long petTokenCacheMaximumSize,
+    HttpClientConfiguration httpClient,
+    BulkheadConfiguration bulkhead) {}
@@ -2,5 +2,20 @@ package bio.terra.axonserver.app.configuration;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+/**
+ * Workspace Manager client configuration.
+ *
+ * @param basePath WSM base url
+ * @param cacheTtlSeconds how long a resource or workspace lookup is reused for the same caller
+ * @param cacheMaximumSize maximum number of lookups held per cache before least recently used
+ *     entries are evicted
+ * @param httpClient connection pool settings for WSM calls
+ * @param bulkhead limits on the WSM calls made at the same time
+ */
 @ConfigurationProperties(prefix = "axonserver.wsm")
-public record WsmConfiguration(String basePath) {}
+public record WsmConfiguration(
+    String basePath,
+    int cacheTtlSeconds,
+    long cacheMaximumSize,
+    HttpClientConfiguration httpClient,
+    BulkheadConfiguration bulkhead) {}
@@ -1,27 +1,51 @@
 package bio.terra.axonserver.app.controller;
 
 import bio.terra.axonserver.api.GetFileApi;
+import bio.terra.axonserver.app.configuration.FileConfiguration;
+import bio.terra.axonserver.model.ApiObjectList;
+import bio.terra.axonserver.model.ApiSignedUrlBatchEntry;
+import bio.terra.axonserver.model.ApiSignedUrlBatchReport;
+import bio.terra.axonserver.model.ApiSignedUrlBatchRequest;
 import bio.terra.axonserver.model.ApiSignedUrlReport;
+import bio.terra.axonserver.service.file.FileContent;
 import bio.terra.axonserver.service.file.FileService;
+import bio.terra.axonserver.service.file.GcsFile;
 import bio.terra.axonserver.service.wsm.WorkspaceManagerService;
+import bio.terra.axonserver.utils.AsyncContentWriter;
+import bio.terra.axonserver.utils.ByteRange;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import bio.terra.axonserver.utils.MeteredInputStream;
+import bio.terra.axonserver.utils.MultipartByteRanges;
+import bio.terra.axonserver.utils.ObjectListWriter;
 import bio.terra.common.exception.ApiException;
 import bio.terra.common.exception.BadRequestException;
 import bio.terra.common.iam.BearerToken;
 import bio.terra.common.iam.BearerTokenFactory;
+import com.google.api.gax.paging.Page;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobInfo;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.net.URLConnection;
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.stereotype.Controller;
 
 /**
@@ -33,16 +57,25 @@ public class GetFileController extends ControllerBase implements GetFileApi {
 
   private final FileService fileService;
   private final WorkspaceManagerService wsmService;
+  private final FileConfiguration fileConfig;
+  private final MeterRegistry meterRegistry;
+  private final HttpServletResponse response;
 
   @Autowired
   public GetFileController(
       BearerTokenFactory bearerTokenFactory,
       HttpServletRequest request,
+      HttpServletResponse response,
       FileService fileService,
-      WorkspaceManagerService wsmService) {
+      WorkspaceManagerService wsmService,
+      FileConfiguration fileConfig,
+      MeterRegistry meterRegistry) {
     super(bearerTokenFactory, request);
+    this.response = response;
     this.fileService = fileService;
     this.wsmService = wsmService;
+    this.fileConfig = fileConfig;
+    this.meterRegistry = meterRegistry;
   }
 
   /**
@@ -78,12 +111,28 @@ public class GetFileController extends ControllerBase implements GetFileApi {
 
   private ResponseEntity<Resource> buildResponse(
       UUID workspaceId, UUID resourceId, @Nullable String objectPath, @Nullable String convertTo) {
+    long requestStartNanos = System.nanoTime();
     BearerToken token = getToken();
 
-    HttpRange byteRange = getByteRange();
+    // Conditional requests are decided against the object's current metadata, as a client
+    // revalidating its copy must not be told that an overwritten object has not changed.
+    HttpHeaders requestHeaders = new ServletServerHttpRequest(getServletRequest()).getHeaders();
+    GcsFile gcsFile =
+        fileService.getGcsFile(
+            token, workspaceId, resourceId, objectPath, isConditional(requestHeaders));
 
-    InputStream resourceObjectStream =
-        fileService.getFile(token, workspaceId, resourceId, objectPath, convertTo, byteRange);
+    // Answer conditional requests from the object metadata alone, without reading the object or
+    // converting it.
+    if (isNotModified(requestHeaders, gcsFile.metadata(), convertTo)) {
+      HttpHeaders resHeaders = new HttpHeaders();
+      setValidators(resHeaders, gcsFile.metadata(), convertTo);
+      return new ResponseEntity<>(resHeaders, HttpStatus.NOT_MODIFIED);
+    }
+
+    List<HttpRange> byteRanges =
+        isRangeCurrent(requestHeaders, gcsFile.metadata()) ? getByteRanges() : List.of();
+
+    FileContent file = fileService.readFile(token, gcsFile, convertTo, byteRanges);
 
     // Infer the content type from the file extension of requested convertTo file extension.
     // The convertTo value is already validated by fileService.
@@ -92,29 +141,158 @@ public class GetFileController extends ControllerBase implements GetFileApi {
             ? URLConnection.guessContentTypeFromName(objectPath)
             : URLConnection.guessContentTypeFromName(("." + convertTo));
 
-    HttpStatus resStatus = byteRange == null ? HttpStatus.OK : HttpStatus.PARTIAL_CONTENT;
     HttpHeaders resHeaders = new HttpHeaders();
     resHeaders.set(HttpHeaders.CONTENT_TYPE, contentType);
+    BlobInfo metadata = file.metadata();
+    setValidators(resHeaders, metadata, convertTo);
+    // Converted files are generated on the fly, so their size is not known up front and they do
+    // not support ranges.
+    if (convertTo != null) {
+      return streamContent(
+          metered(file.content(), "converted", requestStartNanos), resHeaders, HttpStatus.OK);
+    }
+
+    resHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+    List<ByteRange> ranges = file.ranges();
+    if (ranges.isEmpty()) {
+      resHeaders.setContentLength(metadata.getSize());
+      return streamContent(
+          metered(file.content(), "file", requestStartNanos), resHeaders, HttpStatus.OK);
+    }
+    if (ranges.size() == 1) {
+      resHeaders.set(HttpHeaders.CONTENT_RANGE, ranges.get(0).toContentRange(metadata.getSize()));
+      resHeaders.setContentLength(ranges.get(0).length());
+      return streamContent(
+          metered(file.content(), "range", requestStartNanos),
+          resHeaders,
+          HttpStatus.PARTIAL_CONTENT);
+    }
+    MultipartByteRanges multipart =
+        new MultipartByteRanges(ranges, contentType, metadata.getSize());
+    resHeaders.set(HttpHeaders.CONTENT_TYPE, multipart.getContentType());
+    resHeaders.setContentLength(multipart.getContentLength());
+    return streamContent(
+        metered(multipart.toInputStream(file.content()), "ranges", requestStartNanos),
+        resHeaders,
+        HttpStatus.PARTIAL_CONTENT);
+  }
+
+  private InputStream metered(InputStream content, String contentKind, long requestStartNanos) {
+    return new MeteredInputStream(content, meterRegistry, contentKind, requestStartNanos);
+  }
+
+  /**
+   * Send content as the response body. With async streaming the body is written with non-blocking
+   * output and null is returned, which tells Spring that the response has been handled.
+   */
+  @Nullable
+  private ResponseEntity<Resource> streamContent(
+      InputStream content, HttpHeaders resHeaders, HttpStatus status) {
+    HttpServletRequest request = getServletRequest();
+    if (!fileConfig.asyncStreamingEnabled() || !request.isAsyncSupported()) {
+      return new ResponseEntity<>(new InputStreamResource(content), resHeaders, status);
+    }
+    response.setStatus(status.value());
+    resHeaders.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+    try {
+      AsyncContentWriter.start(
+          request,
+          content,
+          Duration.ofSeconds(fileConfig.asyncStreamingTimeoutSeconds()),
+          CloudStorageUtils.MAX_BUFFER_SIZE);
+    } catch (IOException | IllegalStateException e) {
+      IOUtils.closeQuietly(content);
+      throw new ApiException("Failed to start streaming file", e);
+    }
+    return null;
+  }
+
+  /**
+   * A generation identifies one immutable version of an object's content, so it makes a strong
+   * entity tag. A converted file is only equivalent, not byte for byte identical, from one
+   * conversion of a generation to the next, so its entity tag is weak.
+   */
+  private static String getETag(BlobInfo metadata, @Nullable String convertTo) {
+    return convertTo == null
+        ? "\"" + metadata.getGeneration() + "\""
+        : "W/\"" + metadata.getGeneration() + "-" + convertTo.toLowerCase(Locale.ROOT) + "\"";
+  }
+
+  private static void setValidators(
+      HttpHeaders resHeaders, BlobInfo metadata, @Nullable String convertTo) {
+    resHeaders.setETag(getETag(metadata, convertTo));
+    // The update time also moves when only the object's metadata (its metageneration) changes.
+    if (metadata.getUpdateTime() != null) {
+      resHeaders.setLastModified(metadata.getUpdateTime());
+    }
+  }
+
+  private static boolean isConditional(HttpHeaders requestHeaders) {
+    return requestHeaders.containsKey(HttpHeaders.IF_NONE_MATCH)
+        || requestHeaders.containsKey(HttpHeaders.IF_MODIFIED_SINCE)
+        || requestHeaders.containsKey(HttpHeaders.IF_RANGE);
+  }
+
+  /**
+   * Evaluate If-None-Match and If-Modified-Since as described in <a
+   * href="https://www.rfc-editor.org/rfc/rfc7232#section-6">RFC 7232 section 6</a>.
+   */
+  private static boolean isNotModified(
+      HttpHeaders requestHeaders, BlobInfo metadata, @Nullable String convertTo) {
+    List<String> ifNoneMatch;
+    try {
+      ifNoneMatch = requestHeaders.getIfNoneMatch();
+    } catch (IllegalArgumentException e) {
+      // A malformed condition is ignored, as it cannot match
+      ifNoneMatch = List.of();
+    }
+    if (!ifNoneMatch.isEmpty()) {
+      // If-None-Match takes precedence over If-Modified-Since, and compares entity tags weakly.
+      String eTag = stripWeakPrefix(getETag(metadata, convertTo));
+      return ifNoneMatch.stream()
+          .anyMatch(tag -> tag.equals("*") || stripWeakPrefix(tag).equals(eTag));
+    }
+    long ifModifiedSince = requestHeaders.getIfModifiedSince();
+    Long updateTime = metadata.getUpdateTime();
+    // HTTP dates have a resolution of one second
+    return ifModifiedSince != -1
+        && updateTime != null
+        && updateTime / 1000 <= ifModifiedSince / 1000;
+  }
+
+  /**
+   * Whether the ranges of a request should be served: If-Range is absent, or it names the current
+   * version of the file. Otherwise the client's copy is outdated and the whole file is sent.
+   */
+  private static boolean isRangeCurrent(HttpHeaders requestHeaders, BlobInfo metadata) {
+    String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+    if (ifRange == null) {
+      return true;
+    }
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      // Ranges are only served for a strong entity tag match.
+      return ifRange.equals(getETag(metadata, null));
+    }
+    try {
+      long ifRangeDate = requestHeaders.getFirstDate(HttpHeaders.IF_RANGE);
+      Long updateTime = metadata.getUpdateTime();
+      return updateTime != null && updateTime / 1000 == ifRangeDate / 1000;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
 
-    return new ResponseEntity<>(
-        new InputStreamResource(resourceObjectStream), resHeaders, resStatus);
+  private static String stripWeakPrefix(String eTag) {
+    return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
   }
 
   @Override
   public ResponseEntity<ApiSignedUrlReport> getSignedUrl(
       UUID workspaceId, UUID resourceId, String objectName) {
     BearerToken token = getToken();
-    String accessToken = token.getToken();
-    if (accessToken == null) {
-      throw new BadRequestException("Access token is null. Try refreshing your access.");
-    }
+    String accessToken = getAccessToken(token);
     String projectId = wsmService.getGcpContext(workspaceId, accessToken).getProjectId();
-    String bucketName =
-        wsmService
-            .getResource(accessToken, workspaceId, resourceId)
-            .getResourceAttributes()
-            .getGcpGcsBucket()
-            .getBucketName();
+    String bucketName = getBucketName(accessToken, workspaceId, resourceId);
     try {
       String result =
           fileService
@@ -127,16 +305,99 @@ public class GetFileController extends ControllerBase implements GetFileApi {
     }
   }
 
-  private HttpRange getByteRange() {
+  /**
+   * Sign URLs for several objects in a bucket. The workspace, bucket and signing credentials are
+   * looked up once for the whole batch.
+   *
+   * @param workspaceId - UUID of the workspace the bucket is in
+   * @param resourceId - UUID of the bucket the objects are in
+   * @param body - Paths of the objects in the bucket
+   * @return - The signed URLs, in the order of the object paths
+   */
+  @Override
+  public ResponseEntity<ApiSignedUrlBatchReport> getSignedUrls(
+      UUID workspaceId, UUID resourceId, ApiSignedUrlBatchRequest body) {
+    BearerToken token = getToken();
+    String accessToken = getAccessToken(token);
+    String projectId = wsmService.getGcpContext(workspaceId, accessToken).getProjectId();
+    String bucketName = getBucketName(accessToken, workspaceId, resourceId);
+    List<String> objectNames = body.getObjectNames();
+    List<URL> signedUrls;
+    try {
+      signedUrls =
+          fileService.generateV4GetObjectSignedUrls(token, projectId, bucketName, objectNames);
+    } catch (IOException e) {
+      throw new ApiException(e.getMessage(), e);
+    }
+    ApiSignedUrlBatchReport report = new ApiSignedUrlBatchReport();
+    for (int i = 0; i < objectNames.size(); i++) {
+      report.addSignedUrlsItem(
+          new ApiSignedUrlBatchEntry()
+              .objectName(objectNames.get(i))
+              .signedUrl(signedUrls.get(i).toString()));
+    }
+    return new ResponseEntity<>(report, HttpStatus.OK);
+  }
+
+  private static String getAccessToken(BearerToken token) {
+    String accessToken = token.getToken();
+    if (accessToken == null) {
+      throw new BadRequestException("Access token is null. Try refreshing your access.");
+    }
+    return accessToken;
+  }
+
+  private String getBucketName(String accessToken, UUID workspaceId, UUID resourceId) {
+    return wsmService
+        .getResource(accessToken, workspaceId, resourceId)
+        .getResourceAttributes()
+        .getGcpGcsBucket()
+        .getBucketName();
+  }
+
+  /**
+   * List the objects in a bucket, a page at a time. The page is written to the response as it is
+   * read, and null is returned, which tells Spring that the response has been handled.
+   *
+   * @param workspaceId - UUID of the workspace the bucket is in
+   * @param resourceId - UUID of the bucket to list
+   * @param prefix - Optional prefix of the object names to list
+   * @param delimiter - Optional delimiter to group object names by after the prefix
+   * @param pageToken - Optional token of the page to list, from the previous page
+   * @param pageSize - Largest number of objects and prefixes to list
+   * @return - null, as the page is written to the response
+   */
+  @Override
+  public ResponseEntity<ApiObjectList> listObjects(
+      UUID workspaceId,
+      UUID resourceId,
+      @Nullable String prefix,
+      @Nullable String delimiter,
+      @Nullable String pageToken,
+      Integer pageSize) {
+    Page<Blob> page =
+        fileService.listObjects(
+            getToken(), workspaceId, resourceId, prefix, delimiter, pageToken, pageSize);
+    response.setStatus(HttpStatus.OK.value());
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    try {
+      ObjectListWriter.write(response.getOutputStream(), page.getValues(), page.getNextPageToken());
+    } catch (IOException e) {
+      throw new ApiException("Failed to write object list", e);
+    }
+    return null;
+  }
+
+  private List<HttpRange> getByteRanges() {
     String rangeHeader = getServletRequest().getHeader("Range");
     if (rangeHeader == null) {
-      return null;
+      return List.of();
     }
 
-    List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
-    if (ranges.size() != 1) {
-      throw new BadRequestException("Only one range is supported");
+    try {
+      return HttpRange.parseRanges(rangeHeader);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("Invalid range: " + rangeHeader);
     }
-    return ranges.get(0);
   }
 }
@@ -1,9 +1,14 @@
 package bio.terra.axonserver.app.controller;
 
 import bio.terra.axonserver.model.ApiErrorReport;
+import bio.terra.axonserver.service.exception.DownstreamSaturatedException;
+import bio.terra.axonserver.service.exception.RangeNotSatisfiableException;
 import bio.terra.common.exception.AbstractGlobalExceptionHandler;
 import java.util.List;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 @RestControllerAdvice
@@ -17,4 +22,22 @@ public class GlobalExceptionHandler extends AbstractGlobalExceptionHandler<ApiEr
         .statusCode(statusCode.value())
         .causes(causes);
   }
+
+  @ExceptionHandler(RangeNotSatisfiableException.class)
+  public ResponseEntity<ApiErrorReport> rangeNotSatisfiableHandler(
+      RangeNotSatisfiableException ex) {
+    // Tell the client how large the object is, so that it can request a range within it
+    return ResponseEntity.status(ex.getStatusCode())
+        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + ex.getObjectSize())
+        .body(generateErrorReport(ex, ex.getStatusCode(), ex.getCauses()));
+  }
+
+  @ExceptionHandler(DownstreamSaturatedException.class)
+  public ResponseEntity<ApiErrorReport> downstreamSaturatedHandler(
+      DownstreamSaturatedException ex) {
+    // Tell the client when to try again, rather than have it retry at once
+    return ResponseEntity.status(ex.getStatusCode())
+        .header(HttpHeaders.RETRY_AFTER, Integer.toString(ex.getRetryAfterSeconds()))
+        .body(generateErrorReport(ex, ex.getStatusCode(), ex.getCauses()));
+  }
 }
@@ -1,39 +1,61 @@
 package bio.terra.axonserver.service.calhoun;
 
 import bio.terra.axonserver.app.configuration.CalhounConfiguration;
-import bio.terra.calhoun.api.ConvertApi;
+import bio.terra.axonserver.utils.Bulkhead;
+import bio.terra.axonserver.utils.DownstreamMetrics;
+import bio.terra.axonserver.utils.HttpClientUtils;
 import bio.terra.calhoun.client.ApiClient;
-import bio.terra.calhoun.client.ApiException;
-import java.io.File;
-import java.io.FileInputStream;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.io.InputStream;
+import javax.annotation.PreDestroy;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
  * Service for interacting with Calhoun notebook conversion service. <a
  * href="https://github.com/DataBiosphere/calhoun">Calhoun Repo</a>
+ *
+ * <p>Conversions are timed by the axonserver.downstream timer with downstream=calhoun, up to the
+ * start of the converted file, as Calhoun converts a file before it responds. That also makes
+ * conversions hold a request thread for as long as Calhoun takes, so only as many as the bulkhead
+ * allows run at once, and the others are rejected rather than left to take every request thread.
  */
 @Component
 public class CalhounService {
 
+  private static final String CONVERT_NOTEBOOK_PATH = "/api/convert";
+  private static final String CONVERT_RMD_PATH = "/api/convert/rmd";
+
   private final CalhounConfiguration calhounConfig;
+  // Thread safe and shared by all Calhoun calls, so connections are pooled across requests
+  private final Client sharedHttpClient;
+  private final MeterRegistry meterRegistry;
+  private final Bulkhead bulkhead;
 
   @Autowired
-  public CalhounService(CalhounConfiguration calhounConfig) {
+  public CalhounService(CalhounConfiguration calhounConfig, MeterRegistry meterRegistry) {
     this.calhounConfig = calhounConfig;
+    this.meterRegistry = meterRegistry;
+    // The generated client is only used as a template for the pooled client's configuration.
+    this.sharedHttpClient =
+        HttpClientUtils.buildPooledJerseyClient(
+            new ApiClient().getHttpClient(), calhounConfig.httpClient());
+    this.bulkhead = new Bulkhead("calhoun", calhounConfig.bulkhead(), meterRegistry);
   }
 
-  private ApiClient getApiClient(String accessToken) {
-    ApiClient apiClient = getApiClient();
-    apiClient.setAccessToken(accessToken);
-    return apiClient;
-  }
-
-  private ApiClient getApiClient() {
-    return new ApiClient().setBasePath(calhounConfig.basePath());
+  @PreDestroy
+  public void shutdown() {
+    sharedHttpClient.close();
   }
 
   /**
@@ -41,20 +63,17 @@ public class CalhounService {
    *
    * @param accessToken user access token
    * @param fileStream notebook file to convert
-   * @return converted notebook file
+   * @return converted notebook file, streamed from Calhoun; closing it releases the connection
    * @throws BadRequestException if conversion fails
    */
   public InputStream convertNotebook(String accessToken, InputStream fileStream) {
-    try {
-      File convertedFile = new ConvertApi(getApiClient(accessToken)).convertNotebook(fileStream);
-      try {
-        return new FileInputStream(convertedFile);
-      } catch (Exception e) {
-        throw new InternalServerErrorException("Failed to parse converted notebook");
-      }
-    } catch (ApiException apiException) {
-      throw new BadRequestException("Failed to convert notebook");
-    }
+    return convert(
+        CONVERT_NOTEBOOK_PATH,
+        "convertNotebook",
+        accessToken,
+        fileStream,
+        MediaType.APPLICATION_JSON,
+        "notebook");
   }
 
   /**
@@ -62,19 +81,77 @@ public class CalhounService {
    *
    * @param accessToken user access token
    * @param fileStream notebook file to convert
-   * @return converted notebook file
+   * @return converted notebook file, streamed from Calhoun; closing it releases the connection
    * @throws BadRequestException if conversion fails
    */
   public InputStream convertRmd(String accessToken, InputStream fileStream) {
+    return convert(
+        CONVERT_RMD_PATH,
+        "convertRmd",
+        accessToken,
+        fileStream,
+        MediaType.TEXT_PLAIN,
+        "R markdown");
+  }
+
+  /**
+   * Send a file to a Calhoun conversion endpoint. The generated ConvertApi downloads every result
+   * into a temporary file that is never deleted, so the endpoints are called directly and the
+   * result is streamed from the response instead.
+   *
+   * <p>The file is streamed to Calhoun with chunked transfer encoding, so no Content-Length is
+   * sent. By default the shared client buffers request bodies in memory to measure them, which
+   * would hold the whole file in the heap, and its connector sends a streamed body chunked whatever
+   * its size.
+   */
+  private InputStream convert(
+      String path,
+      String operation,
+      String accessToken,
+      InputStream fileStream,
+      String contentType,
+      String description) {
+    Response response =
+        bulkhead.call(
+            () ->
+                DownstreamMetrics.time(
+                    meterRegistry,
+                    "calhoun",
+                    operation,
+                    () -> post(path, accessToken, fileStream, contentType, description)));
     try {
-      File convertedFile = new ConvertApi(getApiClient(accessToken)).convertRmd(fileStream);
-      try {
-        return new FileInputStream(convertedFile);
-      } catch (Exception e) {
-        throw new InternalServerErrorException("Failed to parse converted R markdown");
-      }
-    } catch (ApiException apiException) {
-      throw new BadRequestException("Failed to convert R markdown");
+      return response.readEntity(InputStream.class);
+    } catch (ProcessingException e) {
+      response.close();
+      throw new InternalServerErrorException("Failed to parse converted " + description);
+    }
+  }
+
+  /** Send a file to a Calhoun conversion endpoint, and wait for a successful response. */
+  private Response post(
+      String path,
+      String accessToken,
+      InputStream fileStream,
+      String contentType,
+      String description) {
+    Response response;
+    try {
+      response =
+          sharedHttpClient
+              .target(calhounConfig.basePath())
+              .path(path)
+              .request(MediaType.TEXT_HTML)
+              .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+              // Sent as Transfer-Encoding: chunked rather than buffered to measure its length
+              .property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED)
+              .post(Entity.entity(fileStream, contentType));
+    } catch (ProcessingException e) {
+      throw new BadRequestException("Failed to convert " + description);
+    }
+    if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+      response.close();
+      throw new BadRequestException("Failed to convert " + description);
     }
+    return response;
   }
 }
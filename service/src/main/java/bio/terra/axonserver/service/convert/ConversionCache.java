@@ -0,0 +1,337 @@
+package bio.terra.axonserver.service.convert;
+
+import bio.terra.axonserver.app.configuration.ConvertConfiguration;
+import bio.terra.axonserver.utils.ChunkPool;
+import bio.terra.axonserver.utils.ChunkedByteArrayOutputStream;
+import bio.terra.common.exception.ApiException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Two tier cache of converted files. Small conversions are kept in memory, and every conversion is
+ * kept on disk, each tier evicting least recently used entries once it reaches its configured size.
+ * Concurrent requests for a conversion that is not cached yet share a single conversion.
+ *
+ * <p>Conversions are kept in memory as chunks taken from a pool, collected while the conversion is
+ * written to disk, so that a growing conversion is never copied and is not read back from its file.
+ * The chunks of a conversion that turns out too large for memory go back to the pool at once. The
+ * chunks of an evicted conversion are left to the garbage collector instead, as requests may still
+ * be reading them.
+ *
+ * <p>The cache does not check access. Callers must make sure the requester may read the source
+ * object before asking for its conversion.
+ */
+@Component
+public class ConversionCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(ConversionCache.class);
+  private static final String FILE_PREFIX = "conversion-";
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+  private static final int MEMORY_CHUNK_SIZE = 16 * 1024;
+
+  private final int memoryMaximumEntryBytes;
+  private final long diskMaximumBytes;
+  private final int sharedConversionWaitMillis;
+  // Bytes held by each tier, including cache files that are still being written
+  private final AtomicLong memoryBytes = new AtomicLong();
+  private final AtomicLong diskBytes = new AtomicLong();
+  private final Path directory;
+  private final ChunkPool memoryChunkPool;
+  private final Cache<ConversionKey, ChunkedByteArrayOutputStream> memoryCache;
+  private final Cache<ConversionKey, Path> diskCache;
+  private final ConcurrentMap<ConversionKey, CompletableFuture<Void>> conversionsInFlight =
+      new ConcurrentHashMap<>();
+
+  @Autowired
+  public ConversionCache(ConvertConfiguration convertConfig, MeterRegistry meterRegistry)
+      throws IOException {
+    this.memoryMaximumEntryBytes = (int) convertConfig.memoryCacheMaximumEntrySize().toBytes();
+    this.diskMaximumBytes = convertConfig.diskCacheMaximumSize().toBytes();
+    this.sharedConversionWaitMillis = convertConfig.sharedConversionWaitMillis();
+    this.directory =
+        convertConfig.diskCacheDirectory() != null
+            ? Path.of(convertConfig.diskCacheDirectory())
+            : Path.of(FileUtils.getTempDirectoryPath(), "axonserver-conversions");
+    Files.createDirectories(directory);
+    // Files left behind by an earlier process are not indexed, so they would never be evicted.
+    deleteCacheFiles();
+
+    // Enough idle chunks are kept to collect the largest conversion kept in memory.
+    int memoryChunkSize = Math.max(1, Math.min(MEMORY_CHUNK_SIZE, memoryMaximumEntryBytes));
+    this.memoryChunkPool =
+        new ChunkPool(memoryChunkSize, memoryMaximumEntryBytes / memoryChunkSize + 1);
+
+    // A single segment makes the size limits apply to the whole cache rather than to each segment.
+    // Conversions are weighed by their chunks, including the unused end of the last one.
+    this.memoryCache =
+        CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(convertConfig.memoryCacheMaximumSize().toBytes())
+            .<ConversionKey, ChunkedByteArrayOutputStream>weigher(
+                (key, content) -> (int) content.capacity())
+            .removalListener(
+                (RemovalNotification<ConversionKey, ChunkedByteArrayOutputStream> removed) ->
+                    memoryBytes.addAndGet(-removed.getValue().capacity()))
+            .recordStats()
+            .build();
+    this.diskCache =
+        CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(diskMaximumBytes)
+            .<ConversionKey, Path>weigher((key, path) -> weighFile(path))
+            .removalListener(this::deleteEvictedFile)
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, memoryCache, "convert.memory");
+    GuavaCacheMetrics.monitor(meterRegistry, diskCache, "convert.disk");
+    Gauge.builder("convert.memory.size", memoryBytes, AtomicLong::get)
+        .description("Bytes of converted files held in memory")
+        .baseUnit(BaseUnits.BYTES)
+        .register(meterRegistry);
+    Gauge.builder("convert.disk.size", diskBytes, AtomicLong::get)
+        .description("Bytes of converted files held on disk, including files being written")
+        .baseUnit(BaseUnits.BYTES)
+        .register(meterRegistry);
+  }
+
+  @PreDestroy
+  public void shutdown() throws IOException {
+    diskCache.invalidateAll();
+    deleteCacheFiles();
+  }
+
+  /**
+   * Get a converted file, converting it on a miss. When several requests miss on the same key at
+   * once, only the first converts, and the others wait for its result up to the configured wait
+   * before converting the file themselves.
+   *
+   * <p>A new conversion is written to a cache file in full before it is returned, so how fast the
+   * first caller reads it, or whether it reads it at all, does not hold up the others. A conversion
+   * larger than the disk cache is streamed to the first caller without being cached.
+   *
+   * @param key identifies the conversion
+   * @param converter converts the source object; only called on a miss
+   * @return converted file
+   */
+  public InputStream get(ConversionKey key, Supplier<InputStream> converter) {
+    InputStream cached = getCached(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    CompletableFuture<Void> conversion = new CompletableFuture<>();
+    CompletableFuture<Void> inFlight = conversionsInFlight.putIfAbsent(key, conversion);
+    if (inFlight != null) {
+      return awaitConversion(key, inFlight, converter);
+    }
+
+    try {
+      InputStream converted = convertAndCache(key, converter);
+      conversionsInFlight.remove(key, conversion);
+      conversion.complete(null);
+      return converted;
+    } catch (RuntimeException e) {
+      conversionsInFlight.remove(key, conversion);
+      conversion.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /** Wait for another request's conversion to be cached, and read it from the cache. */
+  private InputStream awaitConversion(
+      ConversionKey key, CompletableFuture<Void> inFlight, Supplier<InputStream> converter) {
+    try {
+      inFlight.get(sharedConversionWaitMillis, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException cause
+          ? cause
+          : new CompletionException(e.getCause());
+    } catch (TimeoutException e) {
+      logger.info("Conversion {} still in flight after waiting; converting it again", key);
+      return converter.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ApiException("Interrupted waiting for conversion", e);
+    }
+    InputStream cached = getCached(key);
+    // The result was not cached if it was too large, and it may already have been evicted again
+    // when the cache is small.
+    return cached != null ? cached : converter.get();
+  }
+
+  @Nullable
+  private InputStream getCached(ConversionKey key) {
+    ChunkedByteArrayOutputStream content = memoryCache.getIfPresent(key);
+    if (content != null) {
+      return content.toInputStream();
+    }
+    Path path = diskCache.getIfPresent(key);
+    if (path != null) {
+      try {
+        return Files.newInputStream(path);
+      } catch (NoSuchFileException e) {
+        // Evicted between the lookup and the open
+        return null;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Convert a file and write the conversion to a cache file, and to memory while it is small enough
+   * for the memory tier, then publish it to the cache and return it from there. Once the conversion
+   * outgrows the disk cache, copying stops, and the part written so far is returned followed by the
+   * rest of the conversion, deleting the file once read.
+   */
+  private InputStream convertAndCache(ConversionKey key, Supplier<InputStream> converter) {
+    InputStream converted = converter.get();
+    Path path;
+    try {
+      path = Files.createTempFile(directory, FILE_PREFIX, ".tmp");
+    } catch (IOException e) {
+      // Caching is best effort; the conversion is still streamed to the caller.
+      logger.warn("Failed to create cache file for conversion {}", key, e);
+      return converted;
+    }
+    long size = 0;
+    ChunkedByteArrayOutputStream memoryContent =
+        new ChunkedByteArrayOutputStream(memoryChunkPool, memoryMaximumEntryBytes);
+    try {
+      try (OutputStream cacheOut = Files.newOutputStream(path)) {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int read;
+        while ((read = converted.read(buffer)) != -1) {
+          cacheOut.write(buffer, 0, read);
+          size += read;
+          diskBytes.addAndGet(read);
+          if (memoryContent != null) {
+            if (size <= memoryMaximumEntryBytes) {
+              memoryContent.write(buffer, 0, read);
+            } else {
+              memoryContent.release();
+              memoryContent = null;
+            }
+          }
+          if (size > diskMaximumBytes) {
+            break;
+          }
+        }
+      }
+      if (size > diskMaximumBytes) {
+        if (memoryContent != null) {
+          memoryContent.release();
+        }
+        return new UncachedConversion(path, size, converted);
+      }
+      converted.close();
+      if (memoryContent != null) {
+        memoryCache.put(key, memoryContent);
+        memoryBytes.addAndGet(memoryContent.capacity());
+        diskCache.put(key, path);
+        return memoryContent.toInputStream();
+      }
+      // Opened before the file is published, as eviction deletes it; an open file stays readable.
+      InputStream content = Files.newInputStream(path);
+      diskCache.put(key, path);
+      return content;
+    } catch (IOException e) {
+      if (memoryContent != null) {
+        memoryContent.release();
+      }
+      IOUtils.closeQuietly(converted);
+      FileUtils.deleteQuietly(path.toFile());
+      diskBytes.addAndGet(-size);
+      throw new UncheckedIOException("Failed to read conversion " + key, e);
+    }
+  }
+
+  /**
+   * A conversion larger than the disk cache: the part written to its file so far, followed by the
+   * rest of the conversion. The file is deleted once the stream is closed.
+   */
+  private class UncachedConversion extends SequenceInputStream {
+
+    private final Path path;
+    private final long size;
+    private boolean closed;
+
+    UncachedConversion(Path path, long size, InputStream rest) throws IOException {
+      super(Files.newInputStream(path), rest);
+      this.path = path;
+      this.size = size;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        if (!closed) {
+          closed = true;
+          FileUtils.deleteQuietly(path.toFile());
+          diskBytes.addAndGet(-size);
+        }
+      }
+    }
+  }
+
+  private void deleteCacheFiles() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*")) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  private static int weighFile(Path path) {
+    try {
+      return (int) Math.min(Files.size(path), Integer.MAX_VALUE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void deleteEvictedFile(RemovalNotification<ConversionKey, Path> removed) {
+    try {
+      long size = Files.size(removed.getValue());
+      // Readers that already opened the file keep reading it after it is deleted.
+      Files.delete(removed.getValue());
+      diskBytes.addAndGet(-size);
+    } catch (IOException e) {
+      logger.warn("Failed to delete cached conversion {}", removed.getValue(), e);
+    }
+  }
+}
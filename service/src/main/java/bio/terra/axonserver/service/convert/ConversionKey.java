@@ -0,0 +1,14 @@
+package bio.terra.axonserver.service.convert;
+
+/**
+ * Identifies the result of converting one generation of a GCS object. Generations are immutable, so
+ * the result of a conversion never goes stale.
+ *
+ * @param bucket bucket of the source object
+ * @param object name of the source object
+ * @param generation generation of the source object
+ * @param sourceFormat format of the source object, e.g. ipynb
+ * @param targetFormat format the object is converted to, e.g. html
+ */
+public record ConversionKey(
+    String bucket, String object, long generation, String sourceFormat, String targetFormat) {}
@@ -0,0 +1,23 @@
+package bio.terra.axonserver.service.exception;
+
+import bio.terra.common.exception.ErrorReportException;
+import java.util.List;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when a call to a service we depend on is rejected because that service already has as
+ * many calls in flight and waiting as it is allowed.
+ */
+public class DownstreamSaturatedException extends ErrorReportException {
+
+  private final int retryAfterSeconds;
+
+  public DownstreamSaturatedException(String message, int retryAfterSeconds) {
+    super(message, List.of(), HttpStatus.SERVICE_UNAVAILABLE);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
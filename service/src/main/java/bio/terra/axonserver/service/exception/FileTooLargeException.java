@@ -0,0 +1,16 @@
+package bio.terra.axonserver.service.exception;
+
+import bio.terra.common.exception.ErrorReportException;
+import java.util.List;
+import org.springframework.http.HttpStatus;
+
+/** Thrown when a file is too large for the requested processing, such as a conversion. */
+public class FileTooLargeException extends ErrorReportException {
+  public FileTooLargeException(String message) {
+    super(message, List.of(), HttpStatus.PAYLOAD_TOO_LARGE);
+  }
+
+  public FileTooLargeException(String message, Throwable cause) {
+    super(message, cause, List.of(), HttpStatus.PAYLOAD_TOO_LARGE);
+  }
+}
@@ -0,0 +1,13 @@
+package bio.terra.axonserver.service.exception;
+
+import bio.terra.common.exception.ErrorReportException;
+import java.util.List;
+import org.springframework.http.HttpStatus;
+
+/** Thrown when a lookup in a service we depend on, such as WSM or Sam, does not answer in time. */
+public class LookupTimeoutException extends ErrorReportException {
+
+  public LookupTimeoutException(String message, Throwable cause) {
+    super(message, cause, List.of(), HttpStatus.GATEWAY_TIMEOUT);
+  }
+}
@@ -0,0 +1,20 @@
+package bio.terra.axonserver.service.exception;
+
+import bio.terra.common.exception.ErrorReportException;
+import java.util.List;
+import org.springframework.http.HttpStatus;
+
+/** Thrown when a requested byte range does not cover any byte of the requested object. */
+public class RangeNotSatisfiableException extends ErrorReportException {
+
+  private final long objectSize;
+
+  public RangeNotSatisfiableException(String message, long objectSize) {
+    super(message, List.of(), HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    this.objectSize = objectSize;
+  }
+
+  public long getObjectSize() {
+    return objectSize;
+  }
+}
@@ -0,0 +1,16 @@
+package bio.terra.axonserver.service.file;
+
+import bio.terra.axonserver.utils.ByteRange;
+import com.google.cloud.storage.BlobInfo;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Content of a file read from a cloud resource.
+ *
+ * @param content the file content, or the requested range of it
+ * @param metadata metadata of the object the content was read or converted from
+ * @param ranges ranges of the object in content, ordered by offset, with the bytes of each range
+ *     following the previous one; empty if content is the whole file
+ */
+public record FileContent(InputStream content, BlobInfo metadata, List<ByteRange> ranges) {}
@@ -1,26 +1,60 @@
 package bio.terra.axonserver.service.file;
 
+import bio.terra.axonserver.app.configuration.FileConfiguration;
+import bio.terra.axonserver.service.convert.ConversionCache;
+import bio.terra.axonserver.service.convert.ConversionKey;
 import bio.terra.axonserver.service.convert.ConvertService;
+import bio.terra.axonserver.service.exception.CloudObjectReadException;
+import bio.terra.axonserver.service.exception.DownstreamSaturatedException;
+import bio.terra.axonserver.service.exception.FileTooLargeException;
 import bio.terra.axonserver.service.exception.InvalidResourceTypeException;
+import bio.terra.axonserver.service.exception.LookupTimeoutException;
+import bio.terra.axonserver.service.exception.RangeNotSatisfiableException;
+import bio.terra.axonserver.service.gcs.BlockCache;
+import bio.terra.axonserver.service.gcs.GcsBulkhead;
+import bio.terra.axonserver.service.gcs.ObjectMetadataCache;
+import bio.terra.axonserver.service.gcs.StorageClientFactory;
+import bio.terra.axonserver.service.gcs.UrlSigner;
 import bio.terra.axonserver.service.iam.SamService;
 import bio.terra.axonserver.service.wsm.WorkspaceManagerService;
+import bio.terra.axonserver.utils.ByteRange;
 import bio.terra.axonserver.utils.CloudStorageUtils;
+import bio.terra.axonserver.utils.ReadAheadInputStream;
+import bio.terra.common.exception.ApiException;
+import bio.terra.common.exception.BadRequestException;
+import bio.terra.common.exception.NotFoundException;
 import bio.terra.common.iam.BearerToken;
 import bio.terra.workspace.model.ResourceDescription;
-import com.google.auth.oauth2.GoogleCredentials;
-import com.google.auth.oauth2.ImpersonatedCredentials;
+import bio.terra.workspace.model.ResourceType;
+import com.google.api.gax.paging.Page;
+import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageException;
-import com.google.cloud.storage.StorageOptions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpRange;
 import org.springframework.stereotype.Component;
@@ -37,46 +71,183 @@ public class FileService {
   private final SamService samService;
   private final WorkspaceManagerService wsmService;
   private final ConvertService convertService;
-
-  private record FileWithName(InputStream fileStream, String fileName) {}
+  private final ConversionCache conversionCache;
+  private final StorageClientFactory storageClientFactory;
+  private final ObjectMetadataCache objectMetadataCache;
+  private final UrlSigner urlSigner;
+  private final BlockCache blockCache;
+  private final GcsBulkhead gcsBulkhead;
+  private final FileConfiguration fileConfig;
+  private final ExecutorService rangeReadExecutor;
+  private final ExecutorService readAheadExecutor;
+  private final SlicedDownloader slicedDownloader;
+  private final ExecutorService signUrlExecutor;
+  private final ExecutorService lookupExecutor;
 
   @Autowired
   public FileService(
-      SamService samService, WorkspaceManagerService wsmService, ConvertService convertService) {
+      SamService samService,
+      WorkspaceManagerService wsmService,
+      ConvertService convertService,
+      ConversionCache conversionCache,
+      StorageClientFactory storageClientFactory,
+      ObjectMetadataCache objectMetadataCache,
+      UrlSigner urlSigner,
+      BlockCache blockCache,
+      GcsBulkhead gcsBulkhead,
+      FileConfiguration fileConfig) {
     this.samService = samService;
     this.wsmService = wsmService;
     this.convertService = convertService;
+    this.conversionCache = conversionCache;
+    this.storageClientFactory = storageClientFactory;
+    this.objectMetadataCache = objectMetadataCache;
+    this.urlSigner = urlSigner;
+    this.blockCache = blockCache;
+    this.gcsBulkhead = gcsBulkhead;
+    this.fileConfig = fileConfig;
+    this.rangeReadExecutor =
+        Executors.newFixedThreadPool(
+            fileConfig.rangeReadThreads(),
+            new ThreadFactoryBuilder().setNameFormat("file-range-read-%d").setDaemon(true).build());
+    this.readAheadExecutor =
+        Executors.newFixedThreadPool(
+            fileConfig.readAheadThreads(),
+            new ThreadFactoryBuilder().setNameFormat("file-read-ahead-%d").setDaemon(true).build());
+    this.slicedDownloader =
+        new SlicedDownloader(
+            fileConfig.sliceSizeBytes(),
+            fileConfig.slicesPerDownload(),
+            fileConfig.maxBufferedSlices(),
+            fileConfig.sliceReadThreads(),
+            gcsBulkhead);
+    // URLs wait for a signing thread in a queue shared by all requests. Once it is full, batches
+    // are rejected rather than queued behind the others without limit.
+    this.signUrlExecutor =
+        new ThreadPoolExecutor(
+            fileConfig.signUrlThreads(),
+            fileConfig.signUrlThreads(),
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(fileConfig.signUrlQueueSize()),
+            new ThreadFactoryBuilder().setNameFormat("file-sign-url-%d").setDaemon(true).build(),
+            (task, executor) -> {
+              throw new DownstreamSaturatedException(
+                  "Too many URLs being signed; try again later",
+                  fileConfig.signUrlBulkhead().retryAfterSeconds());
+            });
+    // Lookups are short, so when every thread is busy a request runs its lookups itself, one by
+    // one, rather than queueing behind other requests.
+    this.lookupExecutor =
+        new ThreadPoolExecutor(
+            fileConfig.lookupThreads(),
+            fileConfig.lookupThreads(),
+            0L,
+            TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("file-lookup-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    rangeReadExecutor.shutdownNow();
+    readAheadExecutor.shutdownNow();
+    slicedDownloader.shutdown();
+    signUrlExecutor.shutdownNow();
+    lookupExecutor.shutdownNow();
   }
 
   /**
-   * Gets a fileStream for a given resource. Optionally converts the file to a desired format.
+   * Looks up the GCS object behind a resource, without reading its content.
    *
    * @param token Bearer token for the requester
    * @param workspaceId The workspace that the resource is in
    * @param resourceId The id of the resource that the object is in
    * @param objectPath The path to the object in the bucket. Only used if the resource is a bucket.
-   * @param convertTo The format to convert the file to. If null, the file is not converted.
-   * @param byteRange The range of bytes to return. If null, the entire file is returned.
-   * @return The file as a byte array
+   * @param revalidate Whether to fetch the object's current metadata rather than reuse cached
+   *     metadata, e.g. to decide whether a client's copy is still current
+   * @return The object, with the client to read it with
    */
-  public InputStream getFile(
+  public GcsFile getGcsFile(
       BearerToken token,
       UUID workspaceId,
       UUID resourceId,
       @Nullable String objectPath,
-      @Nullable String convertTo,
-      @Nullable HttpRange byteRange) {
+      boolean revalidate) {
+    ResourceLookup lookup = lookUpResource(token, workspaceId, resourceId);
+    BlobId blobId = getBlobId(lookup.resource(), objectPath);
+    String petAccessToken = lookup.petAccessToken();
+    Storage gcs = storageClientFactory.getStorage(petAccessToken);
+    BlobInfo metadata =
+        revalidate
+            ? objectMetadataCache.refresh(petAccessToken, gcs, blobId)
+            : objectMetadataCache.get(petAccessToken, gcs, blobId);
+    return new GcsFile(gcs, petAccessToken, metadata);
+  }
 
-    ResourceDescription resource =
-        wsmService.getResource(token.getToken(), workspaceId, resourceId);
+  /**
+   * Lists a page of the objects in a bucket resource. The resource and the caller's pet credentials
+   * are looked up through their caches, so listing page after page does not look them up again.
+   *
+   * @param token Bearer token for the requester
+   * @param workspaceId The workspace that the bucket is in
+   * @param resourceId The id of the bucket resource
+   * @param prefix Only list objects whose names start with this prefix, or null for all objects
+   * @param delimiter Group objects whose names contain the delimiter after the prefix into a single
+   *     prefix, or null to list every object
+   * @param pageToken Token of the page to list, or null for the first page
+   * @param pageSize Largest number of objects and prefixes to list
+   * @return The page, with prefixes listed as directories
+   */
+  public Page<Blob> listObjects(
+      BearerToken token,
+      UUID workspaceId,
+      UUID resourceId,
+      @Nullable String prefix,
+      @Nullable String delimiter,
+      @Nullable String pageToken,
+      int pageSize) {
+    ResourceLookup lookup = lookUpResource(token, workspaceId, resourceId);
+    ResourceDescription resource = lookup.resource();
+    if (resource.getMetadata().getResourceType() != ResourceType.GCS_BUCKET) {
+      throw new InvalidResourceTypeException(
+          resource.getMetadata().getResourceType() + " is not a type of resource that lists files");
+    }
+    String bucketName = resource.getResourceAttributes().getGcpGcsBucket().getBucketName();
+    Storage gcs = storageClientFactory.getStorage(lookup.petAccessToken());
+    return gcsBulkhead.call(
+        () ->
+            CloudStorageUtils.listBucketObjects(
+                gcs, bucketName, prefix, delimiter, pageToken, pageSize));
+  }
 
-    FileWithName fileWithName = getFileHandler(workspaceId, resource, objectPath, byteRange, token);
-    InputStream fileStream = fileWithName.fileStream;
-    if (convertTo != null) {
-      String fileExtension = FilenameUtils.getExtension(fileWithName.fileName);
-      fileStream = convertService.convertFile(fileStream, fileExtension, convertTo, token);
+  /**
+   * Reads a file looked up with {@link #getGcsFile}. Optionally converts the file to a desired
+   * format. The content is read from the generation that the file metadata describes, unless that
+   * generation has been replaced since; then the current generation is read and described by the
+   * returned metadata.
+   *
+   * @param token Bearer token for the requester
+   * @param file The file to read
+   * @param convertTo The format to convert the file to. If null, the file is not converted.
+   * @param byteRanges The ranges of bytes to return. If empty, the entire file is returned. Ignored
+   *     when the file is converted.
+   * @return The file content
+   * @throws RangeNotSatisfiableException if no range covers any byte of the file
+   * @throws FileTooLargeException if the file is to be converted but is too large
+   */
+  public FileContent readFile(
+      BearerToken token, GcsFile file, @Nullable String convertTo, List<HttpRange> byteRanges) {
+    try {
+      return readGeneration(token, file.gcs(), file.metadata(), convertTo, byteRanges);
+    } catch (NotFoundException e) {
+      // The cached generation may have been replaced since it was cached, so look it up again.
+      BlobId blobId = BlobId.of(file.metadata().getBucket(), file.metadata().getName());
+      objectMetadataCache.invalidate(file.petAccessToken(), blobId);
+      BlobInfo metadata = objectMetadataCache.get(file.petAccessToken(), file.gcs(), blobId);
+      return readGeneration(token, file.gcs(), metadata, convertTo, byteRanges);
     }
-    return fileStream;
   }
 
   /**
@@ -98,53 +269,227 @@ public class FileService {
       BearerToken token, String projectId, String bucketName, String objectName)
       throws StorageException, IOException {
     String petSaEmail = samService.getPetServiceAccount(projectId, token);
-    ImpersonatedCredentials targetCredentials =
-        ImpersonatedCredentials.create(
-            GoogleCredentials.getApplicationDefault(),
-            petSaEmail,
-            null,
-            CloudStorageUtils.getPetScopes(),
-            300);
-
-    Storage storage =
-        StorageOptions.newBuilder()
-            .setProjectId(projectId)
-            .setCredentials(targetCredentials)
-            .build()
-            .getService();
+    return signUrl(projectId, petSaEmail, bucketName, objectName);
+  }
+
+  /**
+   * Generate V4 signed URLs for several objects in a bucket. The pet service account is looked up
+   * once for all objects, and the URLs are signed concurrently. See {@link
+   * #generateV4GetObjectSignedUrl}.
+   *
+   * @param token Bearer token for the requester.
+   * @param projectId The GCP project ID.
+   * @param bucketName Name of the GCS bucket.
+   * @param objectNames Paths to objects in the bucket.
+   * @return Signed URLs giving download access for one hour, in the order of the object names.
+   * @throws BadRequestException if more URLs are requested than one request may sign
+   * @throws DownstreamSaturatedException if too many URLs are being signed already
+   */
+  public List<URL> generateV4GetObjectSignedUrls(
+      BearerToken token, String projectId, String bucketName, List<String> objectNames)
+      throws StorageException, IOException {
+    if (objectNames.size() > fileConfig.maxSignedUrlsPerRequest()) {
+      throw new BadRequestException(
+          "Too many signed URLs requested, at most "
+              + fileConfig.maxSignedUrlsPerRequest()
+              + " are supported");
+    }
+    String petSaEmail = samService.getPetServiceAccount(projectId, token);
+    List<Future<URL>> futures = new ArrayList<>();
+    List<URL> signedUrls = new ArrayList<>();
+    try {
+      for (String objectName : objectNames) {
+        futures.add(
+            signUrlExecutor.submit(() -> signUrl(projectId, petSaEmail, bucketName, objectName)));
+      }
+      for (Future<URL> future : futures) {
+        signedUrls.add(future.get());
+      }
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException cause
+          ? cause
+          : new ApiException("Error signing URL", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ApiException("Interrupted signing URLs", e);
+    } finally {
+      // After a failure or a rejection the remaining URLs are not needed
+      futures.forEach(future -> future.cancel(true));
+    }
+    return signedUrls;
+  }
 
+  private URL signUrl(String projectId, String petSaEmail, String bucketName, String objectName)
+      throws IOException {
     BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(bucketName, objectName)).build();
-    return storage.signUrl(
-        blobInfo,
-        DEFAULT_SIGNED_URL_EXPIRATION_TIME_IN_MINUTES,
-        TimeUnit.MINUTES,
-        Storage.SignUrlOption.withV4Signature());
+    return urlSigner.sign(
+        projectId, petSaEmail, blobInfo, DEFAULT_SIGNED_URL_EXPIRATION_TIME_IN_MINUTES);
   }
 
-  private FileWithName getFileHandler(
-      UUID workspaceId,
-      ResourceDescription resource,
-      @Nullable String objectPath,
-      @Nullable HttpRange byteRange,
-      BearerToken token) {
+  private FileContent readGeneration(
+      BearerToken token,
+      Storage gcs,
+      BlobInfo metadata,
+      @Nullable String convertTo,
+      List<HttpRange> byteRanges) {
+    BlobId generationId =
+        BlobId.of(metadata.getBucket(), metadata.getName(), metadata.getGeneration());
+    if (convertTo != null) {
+      // Rejected before anything is read, as converting a file this large would hold a Calhoun
+      // worker for minutes.
+      if (metadata.getSize() > CloudStorageUtils.MAX_OBJECT_SIZE) {
+        throw new FileTooLargeException(
+            "File is too large to convert: "
+                + metadata.getSize()
+                + " bytes, at most "
+                + CloudStorageUtils.MAX_OBJECT_SIZE
+                + " bytes are supported");
+      }
+      String fileExtension = FilenameUtils.getExtension(metadata.getName());
+      ConversionKey conversionKey =
+          new ConversionKey(
+              metadata.getBucket(),
+              metadata.getName(),
+              metadata.getGeneration(),
+              fileExtension,
+              convertTo.toLowerCase(Locale.ROOT));
+      InputStream converted =
+          conversionCache.get(
+              conversionKey,
+              () ->
+                  convertService.convertFile(
+                      readObject(gcs, generationId, metadata.getSize(), null, true),
+                      fileExtension,
+                      convertTo,
+                      token));
+      return new FileContent(converted, metadata, List.of());
+    }
+    if (byteRanges.isEmpty()) {
+      // Large files are read over several connections at once, while buffers for their slices are
+      // free. Range requests are answered with a single read, as clients asking for ranges are
+      // usually after a small part of the file.
+      InputStream content = null;
+      if (fileConfig.slicedDownloadEnabled()
+          && metadata.getSize() >= fileConfig.slicedDownloadThresholdBytes()) {
+        content = slicedDownloader.tryOpen(gcs, generationId, metadata.getSize());
+      }
+      if (content == null) {
+        content = readObject(gcs, generationId, metadata.getSize(), null, true);
+      }
+      return new FileContent(content, metadata, List.of());
+    }
+
+    // Ranges that do not cover any byte of the file are dropped, and overlapping or adjacent
+    // ranges are sent as one.
+    List<ByteRange> ranges =
+        ByteRange.coalesce(
+            byteRanges.stream()
+                .flatMap(byteRange -> ByteRange.resolve(byteRange, metadata.getSize()).stream())
+                .toList(),
+            0);
+    if (ranges.isEmpty()) {
+      throw new RangeNotSatisfiableException(
+          "Requested range is outside of the file", metadata.getSize());
+    }
+    if (ranges.size() > fileConfig.maxRanges()) {
+      throw new BadRequestException(
+          "Too many ranges requested, at most " + fileConfig.maxRanges() + " are supported");
+    }
+    if (ranges.size() == 1) {
+      return new FileContent(
+          readObject(gcs, generationId, metadata.getSize(), ranges.get(0), true), metadata, ranges);
+    }
+
+    // Ranges close to each other are read from GCS together, and the bytes between them skipped.
+    List<ByteRange> spans = ByteRange.coalesce(ranges, fileConfig.rangeMergeGapBytes());
+    List<InputStream> spanStreams = readSpans(gcs, generationId, metadata.getSize(), spans);
+    return new FileContent(
+        new RangeContentInputStream(ranges, spans, spanStreams), metadata, ranges);
+  }
+
+  /**
+   * Open reads of several spans of an object in parallel. Each read has received its first bytes
+   * when this returns, and the rest of each span is streamed as it is consumed.
+   */
+  private List<InputStream> readSpans(
+      Storage gcs, BlobId generationId, long objectSize, List<ByteRange> spans) {
+    List<Future<InputStream>> futures =
+        spans.stream()
+            .map(
+                span ->
+                    rangeReadExecutor.submit(
+                        // Spans are already read in parallel, so they do not read ahead.
+                        () -> readObject(gcs, generationId, objectSize, span, false)))
+            .toList();
+
+    // Wait for every read, even after one fails, so that no opened read is left unclosed.
+    List<InputStream> spanStreams = new ArrayList<>();
+    RuntimeException failure = null;
+    for (Future<InputStream> future : futures) {
+      try {
+        spanStreams.add(future.get());
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure =
+              e.getCause() instanceof RuntimeException cause
+                  ? cause
+                  : new CloudObjectReadException("Error reading GCS object", e.getCause());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failure = new CloudObjectReadException("Interrupted reading GCS object", e);
+      }
+    }
+    if (failure != null) {
+      spanStreams.forEach(IOUtils::closeQuietly);
+      throw failure;
+    }
+    return spanStreams;
+  }
 
+  /**
+   * Open a read of an object or a range of it. Small reads are served from the block cache, which
+   * is safe as the caller's credentials have just been used to fetch the generation's metadata.
+   * Otherwise the read buffer is sized to the read, so that small reads do not allocate large
+   * buffers, and reads spanning more than one buffer read ahead. Reads from GCS count against the
+   * GCS bulkhead until their first byte is in.
+   */
+  private InputStream readObject(
+      Storage gcs,
+      BlobId generationId,
+      long objectSize,
+      @Nullable ByteRange range,
+      boolean readAhead) {
+    long length = range == null ? objectSize : range.length();
+    if (blockCache.isCacheable(generationId, length)) {
+      return blockCache.read(
+          gcs, generationId, objectSize, range == null ? new ByteRange(0, objectSize - 1) : range);
+    }
+    int chunkSize =
+        (int)
+            Math.max(
+                fileConfig.minReadChunkSizeBytes(),
+                Math.min(fileConfig.readChunkSizeBytes(), length));
+    InputStream content =
+        gcsBulkhead.call(
+            () -> CloudStorageUtils.getBucketObject(gcs, generationId, range, chunkSize));
+    if (readAhead && fileConfig.readAheadEnabled() && length > chunkSize) {
+      return new ReadAheadInputStream(content, chunkSize, readAheadExecutor);
+    }
+    return content;
+  }
+
+  private BlobId getBlobId(ResourceDescription resource, @Nullable String objectPath) {
     return switch (resource.getMetadata().getResourceType()) {
-      case GCS_OBJECT -> getGcsObjectFile(workspaceId, resource, objectPath, byteRange, token);
-      case GCS_BUCKET -> getGcsBucketFile(workspaceId, resource, objectPath, byteRange, token);
+      case GCS_OBJECT -> getGcsObjectBlobId(resource, objectPath);
+      case GCS_BUCKET -> getGcsBucketBlobId(resource, objectPath);
       default -> throw new InvalidResourceTypeException(
           resource.getMetadata().getResourceType()
               + " is not a type of resource that contains files");
     };
   }
 
-  private FileWithName getGcsObjectFile(
-      UUID workspaceId,
-      ResourceDescription resource,
-      @Nullable String objectPath,
-      @Nullable HttpRange byteRange,
-      BearerToken token) {
-    GoogleCredentials googleCredentials = getGoogleCredentials(workspaceId, token);
-
+  private BlobId getGcsObjectBlobId(ResourceDescription resource, @Nullable String objectPath) {
     String bucketName = resource.getResourceAttributes().getGcpGcsObject().getBucketName();
     // If objectPath is not provided, assume provided gcsObject is a prefix and retrieve the full
     // objectPath from the resource
@@ -152,29 +497,51 @@ public class FileService {
     if (objectPath == null) {
       objectPath = resource.getResourceAttributes().getGcpGcsObject().getFileName();
     }
+    return BlobId.of(bucketName, CloudStorageUtils.decodeObjectName(objectPath));
+  }
 
-    InputStream fileStream =
-        CloudStorageUtils.getBucketObject(googleCredentials, bucketName, objectPath, byteRange);
-    return new FileWithName(fileStream, objectPath);
+  private BlobId getGcsBucketBlobId(ResourceDescription resource, String objectPath) {
+    String bucketName = resource.getResourceAttributes().getGcpGcsBucket().getBucketName();
+    return BlobId.of(bucketName, CloudStorageUtils.decodeObjectName(objectPath));
   }
 
-  private FileWithName getGcsBucketFile(
-      UUID workspaceId,
-      ResourceDescription resource,
-      String objectPath,
-      @Nullable HttpRange byteRange,
-      BearerToken token) {
-    GoogleCredentials googleCredentials = getGoogleCredentials(workspaceId, token);
+  private record ResourceLookup(ResourceDescription resource, String petAccessToken) {}
 
-    String bucketName = resource.getResourceAttributes().getGcpGcsBucket().getBucketName();
-    InputStream fileStream =
-        CloudStorageUtils.getBucketObject(googleCredentials, bucketName, objectPath, byteRange);
-    return new FileWithName(fileStream, objectPath);
+  /**
+   * Look up a resource and the caller's pet token for its workspace. The resource lookup does not
+   * depend on the others, so it runs alongside the workspace lookup and the pet token lookup that
+   * follows it. A lookup that fails or does not answer in time fails the whole.
+   */
+  private ResourceLookup lookUpResource(BearerToken token, UUID workspaceId, UUID resourceId) {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(fileConfig.lookupTimeoutSeconds());
+    CompletableFuture<ResourceDescription> resource =
+        CompletableFuture.supplyAsync(
+            () -> wsmService.getResource(token.getToken(), workspaceId, resourceId),
+            lookupExecutor);
+    CompletableFuture<String> petAccessToken =
+        CompletableFuture.supplyAsync(() -> getPetAccessToken(workspaceId, token), lookupExecutor);
+    // A failed resource lookup is reported first, as it was when the lookups ran one by one
+    return new ResourceLookup(
+        awaitLookup(resource, deadline, "resource " + resourceId),
+        awaitLookup(petAccessToken, deadline, "credentials for workspace " + workspaceId));
+  }
+
+  private static <T> T awaitLookup(CompletableFuture<T> lookup, long deadline, String description) {
+    try {
+      return lookup.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    } catch (TimeoutException e) {
+      throw new LookupTimeoutException("Timed out looking up " + description, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new LookupTimeoutException("Interrupted looking up " + description, e);
+    }
   }
 
-  private GoogleCredentials getGoogleCredentials(UUID workspaceId, BearerToken token) {
+  private String getPetAccessToken(UUID workspaceId, BearerToken token) {
     String projectId = wsmService.getGcpContext(workspaceId, token.getToken()).getProjectId();
-    String petAccessToken = samService.getPetAccessToken(projectId, token);
-    return CloudStorageUtils.getGoogleCredentialsFromToken(petAccessToken);
+    return samService.getPetAccessToken(projectId, token);
   }
 }
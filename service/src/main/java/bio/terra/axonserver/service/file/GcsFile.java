@@ -0,0 +1,13 @@
+package bio.terra.axonserver.service.file;
+
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+
+/**
+ * A GCS object behind a workspace resource, looked up with the caller's credentials.
+ *
+ * @param gcs Storage client authenticated as the caller's pet service account
+ * @param petAccessToken access token of the caller's pet service account
+ * @param metadata metadata of the object
+ */
+public record GcsFile(Storage gcs, String petAccessToken, BlobInfo metadata) {}
@@ -0,0 +1,96 @@
+package bio.terra.axonserver.service.file;
+
+import bio.terra.axonserver.utils.ByteRange;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Streams the bytes of several ranges of an object back to back, in order. The ranges are read from
+ * spans that each cover one or more of them; the bytes of a span that fall between two ranges are
+ * skipped.
+ */
+public class RangeContentInputStream extends InputStream {
+
+  private final List<ByteRange> ranges;
+  private final List<ByteRange> spans;
+  private final List<InputStream> spanStreams;
+
+  private int rangeIndex = -1;
+  private long remainingInRange;
+  private int spanIndex;
+  // Object offset of the next byte of the current span stream
+  private long spanPosition;
+
+  /**
+   * @param ranges non-overlapping ranges, ordered by offset
+   * @param spans non-overlapping spans covering all ranges, ordered by offset
+   * @param spanStreams content of each span, in the same order as spans
+   */
+  public RangeContentInputStream(
+      List<ByteRange> ranges, List<ByteRange> spans, List<InputStream> spanStreams) {
+    this.ranges = ranges;
+    this.spans = spans;
+    this.spanStreams = spanStreams;
+    this.spanPosition = spans.isEmpty() ? 0 : spans.get(0).start();
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (remainingInRange == 0) {
+      if (!nextRange()) {
+        return -1;
+      }
+    }
+    int read = spanStreams.get(spanIndex).read(b, off, (int) Math.min(len, remainingInRange));
+    if (read == -1) {
+      throw new EOFException("Object content ended before the end of the requested range");
+    }
+    remainingInRange -= read;
+    spanPosition += read;
+    return read;
+  }
+
+  private boolean nextRange() throws IOException {
+    rangeIndex++;
+    if (rangeIndex >= ranges.size()) {
+      return false;
+    }
+    ByteRange range = ranges.get(rangeIndex);
+    while (spans.get(spanIndex).end() < range.start()) {
+      // Done with this span; release its connection before moving on
+      spanStreams.get(spanIndex).close();
+      spanIndex++;
+      spanPosition = spans.get(spanIndex).start();
+    }
+    spanStreams.get(spanIndex).skipNBytes(range.start() - spanPosition);
+    spanPosition = range.start();
+    remainingInRange = range.length();
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    for (InputStream spanStream : spanStreams) {
+      try {
+        spanStream.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package bio.terra.axonserver.service.file;
+
+import bio.terra.axonserver.utils.Bulkhead;
+import bio.terra.axonserver.utils.ByteRange;
+import bio.terra.axonserver.utils.ChunkPool;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import javax.annotation.Nullable;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Downloads objects as consecutive slices read from GCS in parallel, and streams the slices back in
+ * order. A single GCS read streams far slower than GCS serves an object over several connections.
+ *
+ * <p>The first slice is streamed as it arrives from GCS, so that a download sends its first bytes
+ * as soon as a single read would, while the slices after it are read in parallel. Every later slice
+ * being read or waiting to be read is held in memory. Each download holds at most slicesPerDownload
+ * slices, and all downloads together at most maxBufferedSlices. A download keeps the buffers it
+ * gets until it is closed, and gets more only while they are free, so a download never waits for
+ * another to free a buffer.
+ */
+public class SlicedDownloader {
+
+  private final int sliceSize;
+  private final int slicesPerDownload;
+  private final Semaphore sliceBuffers;
+  private final ChunkPool bufferPool;
+  private final ExecutorService executor;
+  private final Bulkhead gcsBulkhead;
+
+  /**
+   * @param sliceSize size of each slice in bytes
+   * @param slicesPerDownload largest number of slices a download holds, including the one being
+   *     read from
+   * @param maxBufferedSlices largest number of slices held by all downloads together
+   * @param threads number of threads reading slices for all downloads
+   * @param gcsBulkhead limits the GCS reads opened at the same time, including each slice read
+   */
+  public SlicedDownloader(
+      int sliceSize,
+      int slicesPerDownload,
+      int maxBufferedSlices,
+      int threads,
+      Bulkhead gcsBulkhead) {
+    this.sliceSize = sliceSize;
+    this.slicesPerDownload = slicesPerDownload;
+    this.sliceBuffers = new Semaphore(maxBufferedSlices);
+    this.bufferPool = new ChunkPool(sliceSize, maxBufferedSlices);
+    this.gcsBulkhead = gcsBulkhead;
+    this.executor =
+        Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder().setNameFormat("file-slice-read-%d").setDaemon(true).build());
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Start downloading an object, if a buffer is free for it. The first bytes of the object have
+   * been read when this returns, so a missing object or denied access fails here rather than after
+   * the response has started.
+   *
+   * @param gcs Storage client to read with
+   * @param generationId the object, with the generation to read
+   * @param objectSize size of the object
+   * @return object content, or null if every buffer is taken
+   */
+  @Nullable
+  public InputStream tryOpen(Storage gcs, BlobId generationId, long objectSize) {
+    if (!sliceBuffers.tryAcquire()) {
+      return null;
+    }
+    InputStream firstSlice;
+    try {
+      firstSlice = openSlice(gcs, generationId, sliceRange(0, objectSize));
+    } catch (RuntimeException e) {
+      sliceBuffers.release();
+      throw e;
+    }
+    return new SlicedInputStream(gcs, generationId, objectSize, firstSlice);
+  }
+
+  private ByteRange sliceRange(long slice, long objectSize) {
+    long start = slice * sliceSize;
+    return new ByteRange(start, Math.min(start + sliceSize, objectSize) - 1);
+  }
+
+  private InputStream openSlice(Storage gcs, BlobId generationId, ByteRange range) {
+    return gcsBulkhead.call(
+        () ->
+            CloudStorageUtils.getBucketObject(
+                gcs, generationId, range, CloudStorageUtils.MAX_BUFFER_SIZE));
+  }
+
+  private record Slice(byte[] buffer, int length) {}
+
+  private class SlicedInputStream extends InputStream {
+
+    private final Storage gcs;
+    private final BlobId generationId;
+    private final long objectSize;
+    private final long sliceCount;
+    // Slices being read or waiting to be read, in order
+    private final Deque<CompletableFuture<Slice>> pending = new ArrayDeque<>();
+    // The first slice while it is streamed, or null
+    private InputStream firstSlice;
+    private long firstSliceRemaining;
+    private long nextSlice = 1;
+    // Buffers this download may hold, one of which it has from the start and uses for the first
+    // slice
+    private int buffers = 1;
+    // The slice being read, or null
+    private Slice current;
+    private int position;
+    private boolean closed;
+
+    SlicedInputStream(Storage gcs, BlobId generationId, long objectSize, InputStream firstSlice) {
+      this.gcs = gcs;
+      this.generationId = generationId;
+      this.objectSize = objectSize;
+      this.sliceCount = (objectSize + sliceSize - 1) / sliceSize;
+      this.firstSlice = firstSlice;
+      this.firstSliceRemaining = Math.min(sliceSize, objectSize);
+      startSlices();
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      Objects.checkFromIndexSize(off, len, b.length);
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (len == 0) {
+        return 0;
+      }
+      if (firstSlice != null) {
+        int read = firstSlice.read(b, off, (int) Math.min(len, firstSliceRemaining));
+        if (read > 0) {
+          firstSliceRemaining -= read;
+          return read;
+        }
+        if (firstSliceRemaining > 0) {
+          throw new EOFException("Object content ended before the end of the slice");
+        }
+        firstSlice.close();
+        firstSlice = null;
+      }
+      if ((current == null || position == current.length()) && !nextSlice()) {
+        return -1;
+      }
+      int read = Math.min(len, current.length() - position);
+      System.arraycopy(current.buffer(), position, b, off, read);
+      position += read;
+      return read;
+    }
+
+    private boolean nextSlice() throws IOException {
+      // The spent buffer is reused for the next slice
+      releaseCurrent();
+      startSlices();
+      CompletableFuture<Slice> next = pending.pollFirst();
+      if (next == null) {
+        return false;
+      }
+      try {
+        current = next.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for a slice of the object");
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof UncheckedIOException cause) {
+          throw cause.getCause();
+        }
+        throw new IOException("Failed to read a slice of the object", e.getCause());
+      }
+      position = 0;
+      return true;
+    }
+
+    /** Start reading slices until the download has its share in progress, or no buffer is free. */
+    private void startSlices() {
+      int held = pending.size() + (current == null && firstSlice == null ? 0 : 1);
+      for (; nextSlice < sliceCount && held < slicesPerDownload; nextSlice++, held++) {
+        if (held == buffers) {
+          if (!sliceBuffers.tryAcquire()) {
+            return;
+          }
+          buffers++;
+        }
+        ByteRange range = sliceRange(nextSlice, objectSize);
+        pending.addLast(CompletableFuture.supplyAsync(() -> readSlice(range), executor));
+      }
+    }
+
+    /** Read a slice into a pooled buffer. On failure the buffer is given back right away. */
+    private Slice readSlice(ByteRange range) {
+      byte[] buffer = bufferPool.acquire();
+      int length = (int) range.length();
+      try (InputStream in = openSlice(gcs, generationId, range)) {
+        if (IOUtils.read(in, buffer, 0, length) < length) {
+          throw new EOFException("Object content ended before the end of the slice");
+        }
+        return new Slice(buffer, length);
+      } catch (IOException e) {
+        bufferPool.release(buffer);
+        throw new UncheckedIOException(e);
+      } catch (RuntimeException e) {
+        bufferPool.release(buffer);
+        throw e;
+      }
+    }
+
+    private void releaseCurrent() {
+      if (current != null) {
+        bufferPool.release(current.buffer());
+        current = null;
+      }
+    }
+
+    /** Stop reading. Slices still being read give back their buffers once they are read. */
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (firstSlice != null) {
+        IOUtils.closeQuietly(firstSlice);
+        firstSlice = null;
+      }
+      releaseCurrent();
+      for (CompletableFuture<Slice> slice : pending) {
+        slice.whenComplete(
+            (read, failure) -> {
+              if (read != null) {
+                bufferPool.release(read.buffer());
+              }
+              sliceBuffers.release();
+            });
+      }
+      sliceBuffers.release(buffers - pending.size());
+      pending.clear();
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package bio.terra.axonserver.service.gcs;
+
+import bio.terra.axonserver.app.configuration.BlockCacheConfiguration;
+import bio.terra.axonserver.service.exception.CloudObjectReadException;
+import bio.terra.axonserver.utils.ByteRange;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Read-through cache of GCS object content, kept in fixed size blocks aligned to the start of the
+ * object. Viewers fetching many small ranges of the same hot objects, such as index files, get them
+ * from memory instead of each costing a GCS request.
+ *
+ * <p>Blocks are keyed by object generation, so a cached block never goes stale. They are held in
+ * direct buffers, outside of the heap, and the least recently used blocks are evicted once the
+ * cache reaches its configured size. Blocks a read needs that are not cached are fetched with one
+ * GCS read per run of consecutive missing blocks.
+ *
+ * <p>The cache does not check access. Callers must make sure the requester may read the object
+ * generation, by fetching its metadata with the requester's credentials, before reading it here.
+ */
+@Component
+public class BlockCache {
+
+  private final boolean enabled;
+  private final int blockSize;
+  private final long maximumReadSize;
+  private final GcsBulkhead gcsBulkhead;
+  private final Cache<BlockKey, ByteBuffer> blocks;
+
+  private record BlockKey(String bucket, String object, long generation, long index) {}
+
+  @Autowired
+  public BlockCache(
+      BlockCacheConfiguration blockCacheConfig,
+      GcsBulkhead gcsBulkhead,
+      MeterRegistry meterRegistry) {
+    this.enabled = blockCacheConfig.enabled();
+    this.blockSize = (int) blockCacheConfig.blockSize().toBytes();
+    this.maximumReadSize = blockCacheConfig.maximumReadSize().toBytes();
+    this.gcsBulkhead = gcsBulkhead;
+    // A single segment makes the size limit apply to the whole cache rather than to each segment.
+    this.blocks =
+        CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(blockCacheConfig.maximumSize().toBytes())
+            .<BlockKey, ByteBuffer>weigher((key, block) -> block.capacity())
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, blocks, "gcs.blockCache");
+  }
+
+  /**
+   * Tell whether a read is served through the cache.
+   *
+   * @param generationId object to read; only reads of a specific generation are cached
+   * @param length number of bytes to read
+   */
+  public boolean isCacheable(BlobId generationId, long length) {
+    return enabled
+        && generationId.getGeneration() != null
+        && length > 0
+        && length <= maximumReadSize;
+  }
+
+  /**
+   * Read a range of an object generation, fetching the blocks that are not cached. The whole range
+   * is in memory when this returns.
+   *
+   * @param gcs Storage client to fetch missing blocks with
+   * @param generationId object generation to read
+   * @param objectSize size of the object
+   * @param range range of the object to read
+   * @return range content
+   */
+  public InputStream read(Storage gcs, BlobId generationId, long objectSize, ByteRange range) {
+    long firstIndex = range.start() / blockSize;
+    long lastIndex = range.end() / blockSize;
+    List<ByteBuffer> rangeBlocks = new ArrayList<>();
+    long index = firstIndex;
+    while (index <= lastIndex) {
+      ByteBuffer block = blocks.getIfPresent(blockKey(generationId, index));
+      if (block != null) {
+        rangeBlocks.add(block);
+        index++;
+        continue;
+      }
+      long missEnd = index + 1;
+      while (missEnd <= lastIndex && !blocks.asMap().containsKey(blockKey(generationId, missEnd))) {
+        missEnd++;
+      }
+      rangeBlocks.addAll(fetchBlocks(gcs, generationId, objectSize, index, missEnd));
+      index = missEnd;
+    }
+
+    // Slice the part of each block that is in the range
+    List<ByteBuffer> slices = new ArrayList<>(rangeBlocks.size());
+    for (int i = 0; i < rangeBlocks.size(); i++) {
+      long blockStart = (firstIndex + i) * blockSize;
+      ByteBuffer slice = rangeBlocks.get(i).duplicate();
+      slice.limit((int) (Math.min(range.end() + 1, blockStart + slice.capacity()) - blockStart));
+      slice.position((int) (Math.max(range.start(), blockStart) - blockStart));
+      slices.add(slice);
+    }
+    return new BlocksInputStream(slices);
+  }
+
+  /**
+   * Fetch the blocks from the first index up to, not including, the end index, and cache them. The
+   * fetch counts against the GCS bulkhead; reads served from cached blocks do not.
+   */
+  private List<ByteBuffer> fetchBlocks(
+      Storage gcs, BlobId generationId, long objectSize, long firstIndex, long endIndex) {
+    long start = firstIndex * blockSize;
+    long end = Math.min(endIndex * blockSize, objectSize) - 1;
+    List<ByteBuffer> fetched = new ArrayList<>();
+    try (InputStream content =
+            gcsBulkhead.call(
+                () ->
+                    CloudStorageUtils.getBucketObject(
+                        gcs,
+                        generationId,
+                        new ByteRange(start, end),
+                        (int) Math.min(end - start + 1, CloudStorageUtils.MAX_BUFFER_SIZE)));
+        ReadableByteChannel channel = Channels.newChannel(content)) {
+      for (long index = firstIndex; index < endIndex; index++) {
+        long blockStart = index * blockSize;
+        ByteBuffer block =
+            ByteBuffer.allocateDirect((int) Math.min(blockSize, objectSize - blockStart));
+        IOUtils.readFully(channel, block);
+        block.flip();
+        ByteBuffer cached = block.asReadOnlyBuffer();
+        blocks.put(blockKey(generationId, index), cached);
+        fetched.add(cached);
+      }
+    } catch (IOException e) {
+      throw new CloudObjectReadException("Error reading GCS object", e);
+    }
+    return fetched;
+  }
+
+  private static BlockKey blockKey(BlobId generationId, long index) {
+    return new BlockKey(
+        generationId.getBucket(), generationId.getName(), generationId.getGeneration(), index);
+  }
+
+  /** Reads the remaining bytes of a list of buffers, one after the other. */
+  private static class BlocksInputStream extends InputStream {
+
+    private final List<ByteBuffer> slices;
+    private int sliceIndex;
+
+    BlocksInputStream(List<ByteBuffer> slices) {
+      this.slices = slices;
+    }
+
+    @Override
+    public int read() {
+      ByteBuffer slice = currentSlice();
+      return slice == null ? -1 : slice.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      Objects.checkFromIndexSize(off, len, b.length);
+      if (len == 0) {
+        return 0;
+      }
+      ByteBuffer slice = currentSlice();
+      if (slice == null) {
+        return -1;
+      }
+      int read = Math.min(len, slice.remaining());
+      slice.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public int available() {
+      ByteBuffer slice = currentSlice();
+      return slice == null ? 0 : slice.remaining();
+    }
+
+    /** Move past the slices that are read, and return the one being read, or null at the end. */
+    private ByteBuffer currentSlice() {
+      while (sliceIndex < slices.size() && !slices.get(sliceIndex).hasRemaining()) {
+        sliceIndex++;
+      }
+      return sliceIndex < slices.size() ? slices.get(sliceIndex) : null;
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package bio.terra.axonserver.service.gcs;
+
+import bio.terra.axonserver.app.configuration.GcsConfiguration;
+import bio.terra.axonserver.utils.Bulkhead;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits the GCS metadata requests, listings and object reads made at the same time by all
+ * requests. A read is only limited until its first byte, as streaming the rest goes at the pace of
+ * the client rather than GCS.
+ */
+@Component
+public class GcsBulkhead extends Bulkhead {
+
+  @Autowired
+  public GcsBulkhead(GcsConfiguration gcsConfig, MeterRegistry meterRegistry) {
+    super("gcs", gcsConfig.bulkhead(), meterRegistry);
+  }
+}
@@ -0,0 +1,102 @@
+package bio.terra.axonserver.service.gcs;
+
+import bio.terra.axonserver.app.configuration.GcsConfiguration;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short-lived cache of GCS object metadata, so that repeated reads of the same object, such as a
+ * viewer fetching many ranges of one file, do not each cost a metadata request.
+ *
+ * <p>Entries are keyed by the access token used to fetch them, so metadata fetched for one caller
+ * is never returned to another. Object content is only read once the caller's own credentials have
+ * fetched its metadata, which is what makes serving it from the {@link BlockCache} safe.
+ *
+ * <p>Within the lifetime of an entry a read may see the version of an object that was current when
+ * the entry was cached. Conditional requests are decided with {@link #refresh} instead, so that a
+ * client revalidating its copy is never told that an overwritten object has not changed.
+ *
+ * <p>Reads open the object without a metadata request of their own, but the response headers still
+ * need the object's size and generation, which the GCS read channel does not expose. A read served
+ * from a cached entry therefore costs one GCS round trip, and a read after a miss, or a conditional
+ * request whose client copy is outdated, costs two. A conditional request answered with 304 costs
+ * one. The lifetime of entries trades the staleness of unconditional reads against the share of
+ * reads that pay for the second round trip.
+ */
+@Component
+public class ObjectMetadataCache {
+
+  private final GcsBulkhead gcsBulkhead;
+  private final Cache<MetadataKey, BlobInfo> metadataCache;
+
+  private record MetadataKey(String accessToken, BlobId blobId) {}
+
+  @Autowired
+  public ObjectMetadataCache(
+      GcsConfiguration gcsConfig, GcsBulkhead gcsBulkhead, MeterRegistry meterRegistry) {
+    this.gcsBulkhead = gcsBulkhead;
+    this.metadataCache =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(gcsConfig.metadataCacheTtlSeconds(), TimeUnit.SECONDS)
+            .maximumSize(gcsConfig.metadataCacheMaximumSize())
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, metadataCache, "gcs.objectMetadata");
+  }
+
+  /**
+   * Get the metadata of an object, fetching it on a miss.
+   *
+   * @param accessToken access token the Storage client authenticates with
+   * @param gcs Storage client to fetch the metadata with
+   * @param blobId object to describe
+   * @return object metadata
+   */
+  public BlobInfo get(String accessToken, Storage gcs, BlobId blobId) {
+    try {
+      return metadataCache.get(
+          new MetadataKey(accessToken, blobId),
+          () -> gcsBulkhead.call(() -> CloudStorageUtils.getBucketObjectMetadata(gcs, blobId)));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Fetch the current metadata of an object, bypassing the cache, and cache it for later reads.
+   *
+   * @param accessToken access token the Storage client authenticates with
+   * @param gcs Storage client to fetch the metadata with
+   * @param blobId object to describe
+   * @return object metadata
+   */
+  public BlobInfo refresh(String accessToken, Storage gcs, BlobId blobId) {
+    BlobInfo metadata =
+        gcsBulkhead.call(() -> CloudStorageUtils.getBucketObjectMetadata(gcs, blobId));
+    metadataCache.put(new MetadataKey(accessToken, blobId), metadata);
+    return metadata;
+  }
+
+  /**
+   * Drop the cached metadata of an object, e.g. after the cached generation turned out to be gone.
+   *
+   * @param accessToken access token the metadata was fetched with
+   * @param blobId object to forget
+   */
+  public void invalidate(String accessToken, BlobId blobId) {
+    metadataCache.invalidate(new MetadataKey(accessToken, blobId));
+  }
+}
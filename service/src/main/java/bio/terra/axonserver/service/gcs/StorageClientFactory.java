@@ -0,0 +1,114 @@
+package bio.terra.axonserver.service.gcs;
+
+import bio.terra.axonserver.app.configuration.GcsConfiguration;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.auth.Credentials;
+import com.google.cloud.http.HttpTransportOptions;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds GCS {@link Storage} clients that share a single pooled HTTP transport.
+ *
+ * <p>Every client built here sends its requests through one keep-alive connection pool, so
+ * connections to GCS are reused across requests instead of being set up per request. A client only
+ * adds the caller's credentials on top of the shared transport.
+ */
+@Component
+public class StorageClientFactory {
+
+  private final GcsConfiguration gcsConfig;
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final HttpTransportOptions transportOptions;
+  private final Cache<String, Storage> storageByAccessToken;
+
+  @Autowired
+  public StorageClientFactory(GcsConfiguration gcsConfig, MeterRegistry meterRegistry) {
+    this.gcsConfig = gcsConfig;
+    this.connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(gcsConfig.maxConnections());
+    // All GCS traffic goes to a single host, so one route may use the whole pool.
+    connectionManager.setDefaultMaxPerRoute(gcsConfig.maxConnections());
+
+    HttpTransport transport =
+        new ApacheHttpTransport(
+            ApacheHttpTransport.newDefaultHttpClientBuilder()
+                .setConnectionManager(connectionManager)
+                .build());
+    this.transportOptions =
+        HttpTransportOptions.newBuilder()
+            .setHttpTransportFactory(() -> transport)
+            .setConnectTimeout(gcsConfig.connectTimeoutMillis())
+            .setReadTimeout(gcsConfig.readTimeoutMillis())
+            .build();
+    this.storageByAccessToken =
+        CacheBuilder.newBuilder()
+            .expireAfterAccess(gcsConfig.clientIdleSeconds(), TimeUnit.SECONDS)
+            .maximumSize(gcsConfig.clientCacheMaximumSize())
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, storageByAccessToken, "gcs.storageClient");
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    connectionManager.shutdown();
+  }
+
+  /**
+   * Get a Storage client that authenticates with an access token. Clients are reused for the same
+   * token.
+   *
+   * @param accessToken access token to use for GCS requests
+   * @return Storage client
+   */
+  public Storage getStorage(String accessToken) {
+    try {
+      return storageByAccessToken.get(
+          accessToken,
+          () -> buildStorage(null, CloudStorageUtils.getGoogleCredentialsFromToken(accessToken)));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new IllegalStateException("Failed to build GCS client", e.getCause());
+    }
+  }
+
+  /**
+   * Get a Storage client for the given credentials. The client is not cached, but it shares the
+   * connection pool with every other client.
+   *
+   * @param projectId GCP project the client is billed to, or null for the default project
+   * @param credentials credentials to use for GCS requests
+   * @return Storage client
+   */
+  public Storage getStorage(@Nullable String projectId, Credentials credentials) {
+    return buildStorage(projectId, credentials);
+  }
+
+  private Storage buildStorage(@Nullable String projectId, Credentials credentials) {
+    StorageOptions.Builder builder =
+        StorageOptions.newBuilder()
+            .setCredentials(credentials)
+            .setTransportOptions(transportOptions);
+    if (projectId != null) {
+      builder.setProjectId(projectId);
+    }
+    if (gcsConfig.host() != null) {
+      builder.setHost(gcsConfig.host());
+    }
+    return builder.build().getService();
+  }
+}
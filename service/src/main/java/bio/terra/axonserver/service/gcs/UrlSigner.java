@@ -0,0 +1,122 @@
+package bio.terra.axonserver.service.gcs;
+
+import bio.terra.axonserver.app.configuration.FileConfiguration;
+import bio.terra.axonserver.app.configuration.GcsConfiguration;
+import bio.terra.axonserver.service.exception.DownstreamSaturatedException;
+import bio.terra.axonserver.utils.Bulkhead;
+import bio.terra.axonserver.utils.CloudStorageUtils;
+import bio.terra.axonserver.utils.DownstreamMetrics;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.auth.oauth2.ImpersonatedCredentials;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Signs V4 URLs as pet service accounts.
+ *
+ * <p>Signing as a pet service account goes through the IAM signBlob API, as the service never holds
+ * pet keys. The credentials impersonating a pet and the Storage client signing with them are built
+ * once per pet and shared by all requests signing as that pet, for as long as they are in use. The
+ * credentials refresh themselves, so a cached signer never expires.
+ *
+ * <p>Each signature is one signBlob call, so the count of the axonserver.downstream timer with
+ * downstream=gcs and operation=signUrl is both the signing throughput and the rate of calls to IAM.
+ * Signatures are limited by a bulkhead of their own, tagged downstream=iam, so that a slow IAM API
+ * does not hold up file reads.
+ */
+@Component
+public class UrlSigner {
+
+  // Lifetime of the access tokens the impersonated credentials mint. Signing does not use them.
+  private static final int IMPERSONATED_TOKEN_LIFETIME_SECONDS = 300;
+
+  private final StorageClientFactory storageClientFactory;
+  private final MeterRegistry meterRegistry;
+  private final Bulkhead bulkhead;
+  private final Cache<SignerKey, Storage> signers;
+
+  private record SignerKey(String projectId, String petSaEmail) {}
+
+  @Autowired
+  public UrlSigner(
+      GcsConfiguration gcsConfig,
+      FileConfiguration fileConfig,
+      StorageClientFactory storageClientFactory,
+      MeterRegistry meterRegistry) {
+    this.storageClientFactory = storageClientFactory;
+    this.meterRegistry = meterRegistry;
+    this.bulkhead = new Bulkhead("iam", fileConfig.signUrlBulkhead(), meterRegistry);
+    this.signers =
+        CacheBuilder.newBuilder()
+            .expireAfterAccess(gcsConfig.clientIdleSeconds(), TimeUnit.SECONDS)
+            .maximumSize(gcsConfig.clientCacheMaximumSize())
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, signers, "gcs.urlSigner");
+  }
+
+  /**
+   * Sign a URL giving read access to an object.
+   *
+   * @param projectId GCP project of the pet service account
+   * @param petSaEmail email of the pet service account to sign as
+   * @param blobInfo object to give access to
+   * @param durationMinutes how long the URL is valid
+   * @return signed URL
+   * @throws IOException if the service's own credentials cannot be loaded
+   * @throws DownstreamSaturatedException if too many URLs are being signed already
+   */
+  public URL sign(String projectId, String petSaEmail, BlobInfo blobInfo, long durationMinutes)
+      throws IOException {
+    return bulkhead.call(() -> signBlob(projectId, petSaEmail, blobInfo, durationMinutes));
+  }
+
+  /** Sign a URL with a call to the IAM signBlob API as the pet service account. */
+  protected URL signBlob(
+      String projectId, String petSaEmail, BlobInfo blobInfo, long durationMinutes)
+      throws IOException {
+    Storage signer = getSigner(projectId, petSaEmail);
+    return DownstreamMetrics.time(
+        meterRegistry,
+        "gcs",
+        "signUrl",
+        () ->
+            signer.signUrl(
+                blobInfo,
+                durationMinutes,
+                TimeUnit.MINUTES,
+                Storage.SignUrlOption.withV4Signature()));
+  }
+
+  private Storage getSigner(String projectId, String petSaEmail) throws IOException {
+    try {
+      return signers.get(
+          new SignerKey(projectId, petSaEmail),
+          () ->
+              storageClientFactory.getStorage(
+                  projectId,
+                  ImpersonatedCredentials.create(
+                      GoogleCredentials.getApplicationDefault(),
+                      petSaEmail,
+                      null,
+                      CloudStorageUtils.getPetScopes(),
+                      IMPERSONATED_TOKEN_LIFETIME_SECONDS)));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
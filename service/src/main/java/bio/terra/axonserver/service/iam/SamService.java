@@ -1,9 +1,31 @@
 package bio.terra.axonserver.service.iam;
 
 import bio.terra.axonserver.app.configuration.SamConfiguration;
+import bio.terra.axonserver.utils.AccessTokenContext;
+import bio.terra.axonserver.utils.Bulkhead;
 import bio.terra.axonserver.utils.CloudStorageUtils;
+import bio.terra.axonserver.utils.DownstreamMetrics;
+import bio.terra.axonserver.utils.HttpClientUtils;
+import bio.terra.axonserver.utils.SingleFlight;
 import bio.terra.common.iam.BearerToken;
 import bio.terra.common.sam.exception.SamExceptionFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import okhttp3.OkHttpClient;
 import org.broadinstitute.dsde.workbench.client.sam.ApiClient;
 import org.broadinstitute.dsde.workbench.client.sam.ApiException;
 import org.broadinstitute.dsde.workbench.client.sam.api.GoogleApi;
@@ -13,49 +35,186 @@ import org.springframework.stereotype.Component;
 @Component
 public class SamService {
 
+  private static final int PET_TOKEN_REFRESH_THREADS = 4;
+
   private final SamConfiguration samConfig;
+  private final MeterRegistry meterRegistry;
+  private final Ticker ticker;
+  // How long a pet token is used for, counted from the start of the Sam call that got it
+  private final long petTokenUsableNanos;
+  // Thread safe and shared by all Sam calls, so connections are pooled across requests
+  private final OkHttpClient sharedHttpClient;
+  // Shared by all Sam calls, which pass their access token through AccessTokenContext
+  private final GoogleApi googleApi;
+  private final ExecutorService petTokenRefreshExecutor;
+  private final LoadingCache<PetTokenKey, PetToken> petTokenCache;
+  private final Cache<PetServiceAccountKey, String> petServiceAccountCache;
+  private final SingleFlight<PetTokenKey, PetToken> petTokenFlights;
+  private final SingleFlight<PetServiceAccountKey, String> petServiceAccountFlights;
+  private final Bulkhead bulkhead;
+
+  private record PetTokenKey(String userToken, String projectId, List<String> scopes) {}
+
+  private record PetServiceAccountKey(String userToken, String projectId) {}
+
+  private record PetToken(String accessToken, long expiresAtNanos) {}
 
   @Autowired
-  public SamService(SamConfiguration samConfig) {
-    this.samConfig = samConfig;
+  public SamService(SamConfiguration samConfig, MeterRegistry meterRegistry) {
+    this(samConfig, meterRegistry, Ticker.systemTicker());
   }
 
-  private ApiClient getApiClient(String accessToken) {
-    ApiClient apiClient = getApiClient();
-    apiClient.setAccessToken(accessToken);
-    return apiClient;
+  @VisibleForTesting
+  SamService(SamConfiguration samConfig, MeterRegistry meterRegistry, Ticker ticker) {
+    this.samConfig = samConfig;
+    this.meterRegistry = meterRegistry;
+    this.ticker = ticker;
+    long petTokenUsableSeconds =
+        samConfig.petTokenLifetimeSeconds() - samConfig.petTokenExpiryMarginSeconds();
+    this.petTokenUsableNanos = TimeUnit.SECONDS.toNanos(petTokenUsableSeconds);
+    ApiClient apiClient = new ApiClient();
+    this.sharedHttpClient =
+        HttpClientUtils.buildPooledOkHttpClient(apiClient.getHttpClient(), samConfig.httpClient());
+    apiClient.setHttpClient(sharedHttpClient).setBasePath(samConfig.basePath());
+    this.googleApi = new GoogleApi(apiClient);
+    this.petTokenRefreshExecutor =
+        Executors.newFixedThreadPool(
+            PET_TOKEN_REFRESH_THREADS,
+            new ThreadFactoryBuilder()
+                .setNameFormat("sam-pet-token-refresh-%d")
+                .setDaemon(true)
+                .build());
+    // Concurrent misses for the same key share a single Sam call. Once a token is older than the
+    // refresh age, the next read triggers a background reload and keeps getting the current token
+    // until the reload completes. Each token also carries its own expiry, which is checked on
+    // every read.
+    this.petTokenCache =
+        CacheBuilder.newBuilder()
+            .ticker(ticker)
+            .expireAfterWrite(petTokenUsableSeconds, TimeUnit.SECONDS)
+            .refreshAfterWrite(samConfig.petTokenRefreshSeconds(), TimeUnit.SECONDS)
+            .maximumSize(samConfig.petTokenCacheMaximumSize())
+            .recordStats()
+            .build(
+                CacheLoader.asyncReloading(
+                    CacheLoader.from(this::fetchPetAccessToken), petTokenRefreshExecutor));
+    GuavaCacheMetrics.monitor(meterRegistry, petTokenCache, "sam.petToken");
+    // A pet's email never changes, but entries are keyed by the user token, so they are kept no
+    // longer than that token's pet tokens.
+    this.petServiceAccountCache =
+        CacheBuilder.newBuilder()
+            .ticker(ticker)
+            .expireAfterWrite(petTokenUsableSeconds, TimeUnit.SECONDS)
+            .maximumSize(samConfig.petTokenCacheMaximumSize())
+            .recordStats()
+            .build();
+    GuavaCacheMetrics.monitor(meterRegistry, petServiceAccountCache, "sam.petServiceAccount");
+    this.petTokenFlights = new SingleFlight<>("sam.petToken", meterRegistry);
+    this.petServiceAccountFlights = new SingleFlight<>("sam.petServiceAccount", meterRegistry);
+    // Calls beyond the limits are rejected, so a slow Sam cannot tie up every request thread
+    this.bulkhead = new Bulkhead("sam", samConfig.bulkhead(), meterRegistry);
   }
 
-  private ApiClient getApiClient() {
-    return new ApiClient().setBasePath(samConfig.basePath());
+  @PreDestroy
+  public void shutdown() {
+    petTokenRefreshExecutor.shutdownNow();
   }
 
   /**
-   * Get a pet service account access token for a user.
+   * Get a pet service account access token for a user. Tokens are cached per user, project and
+   * scopes, and are never returned once their lifetime less the expiry margin has passed.
    *
    * @param projectId google project id
    * @param userRequest user access token
    * @return pet service account access token
    */
   public String getPetAccessToken(String projectId, BearerToken userRequest) {
+    PetTokenKey key =
+        new PetTokenKey(userRequest.getToken(), projectId, CloudStorageUtils.getPetScopes());
+    // Hits read the cache directly, as reads are what trigger its background refresh. Misses made
+    // at the same time share one Sam call.
+    PetToken token =
+        petTokenCache.asMap().containsKey(key)
+            ? getPetToken(key)
+            : petTokenFlights.call(key, () -> getPetToken(key));
+    // The cache expires entries by when they were written, which can be well after the Sam call
+    // started, and keeps serving a token whose background refresh failed. A token past its own
+    // expiry is dropped and fetched again instead.
+    if (ticker.read() - token.expiresAtNanos() >= 0) {
+      petTokenCache.asMap().remove(key, token);
+      token = petTokenFlights.call(key, () -> getPetToken(key));
+    }
+    return token.accessToken();
+  }
+
+  private PetToken getPetToken(PetTokenKey key) {
+    try {
+      return petTokenCache.getUnchecked(key);
+    } catch (UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private PetToken fetchPetAccessToken(PetTokenKey key) {
+    // Sam may have issued the token before this call, so its expiry is counted from the start
+    long startNanos = ticker.read();
+    String accessToken;
     try {
-      return new GoogleApi(getApiClient(userRequest.getToken()))
-          .getPetServiceAccountToken(projectId, CloudStorageUtils.getPetScopes());
+      accessToken =
+          bulkhead.call(
+              () ->
+                  DownstreamMetrics.time(
+                      meterRegistry,
+                      "sam",
+                      "getPetToken",
+                      () ->
+                          AccessTokenContext.call(
+                              key.userToken(),
+                              () ->
+                                  googleApi.getPetServiceAccountToken(
+                                      key.projectId(), key.scopes()))));
     } catch (ApiException apiException) {
       throw SamExceptionFactory.create("Error getting user's pet SA access token", apiException);
     }
+    return new PetToken(accessToken, startNanos + petTokenUsableNanos);
   }
 
   /**
-   * Get the pet service account email for a user, within a specified project.
+   * Get the pet service account email for a user, within a specified project. Emails are cached per
+   * user and project.
    *
    * @param projectId Google project ID
    * @param userRequest User access token
    * @return The pet service account email.
    */
   public String getPetServiceAccount(String projectId, BearerToken userRequest) {
+    PetServiceAccountKey key = new PetServiceAccountKey(userRequest.getToken(), projectId);
+    String cached = petServiceAccountCache.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+    // Misses made at the same time share one Sam call
+    return petServiceAccountFlights.call(
+        key,
+        () -> {
+          String email = fetchPetServiceAccount(key);
+          petServiceAccountCache.put(key, email);
+          return email;
+        });
+  }
+
+  private String fetchPetServiceAccount(PetServiceAccountKey key) {
     try {
-      return new GoogleApi(getApiClient(userRequest.getToken())).getPetServiceAccount(projectId);
+      return bulkhead.call(
+          () ->
+              DownstreamMetrics.time(
+                  meterRegistry,
+                  "sam",
+                  "getPetServiceAccount",
+                  () ->
+                      AccessTokenContext.call(
+                          key.userToken(), () -> googleApi.getPetServiceAccount(key.projectId()))));
     } catch (ApiException apiException) {
       throw SamExceptionFactory.create("Error getting user's pet SA email.", apiException);
     }
@@ -1,36 +1,93 @@
 package bio.terra.axonserver.service.wsm;
 
 import bio.terra.axonserver.app.configuration.WsmConfiguration;
+import bio.terra.axonserver.utils.AccessTokenContext;
+import bio.terra.axonserver.utils.Bulkhead;
+import bio.terra.axonserver.utils.DownstreamMetrics;
+import bio.terra.axonserver.utils.HttpClientUtils;
+import bio.terra.axonserver.utils.SingleFlight;
 import bio.terra.workspace.api.ResourceApi;
 import bio.terra.workspace.api.WorkspaceApi;
 import bio.terra.workspace.client.ApiClient;
 import bio.terra.workspace.client.ApiException;
 import bio.terra.workspace.model.GcpContext;
 import bio.terra.workspace.model.ResourceDescription;
+import bio.terra.workspace.model.WorkspaceDescription;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.client.Client;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-/** Service for interacting with the Terra Workspace Manager client. */
+/**
+ * Service for interacting with the Terra Workspace Manager client.
+ *
+ * <p>Resource and workspace lookups are cached for a short time, and identical lookups made at the
+ * same time share one WSM call. Cache entries are keyed by the caller's access token, so a lookup
+ * made with one token is never returned to a request made with another token. Permission changes in
+ * WSM are seen once the cached entry expires.
+ *
+ * <p>WSM calls are timed by the axonserver.downstream timer with downstream=wsm. Calls beyond the
+ * configured bulkhead limits are rejected, so a slow WSM cannot tie up every request thread.
+ */
 @Component
 public class WorkspaceManagerService {
 
   private final WsmConfiguration wsmConfig;
+  private final MeterRegistry meterRegistry;
+  // Thread safe and shared by all WSM calls, so connections are pooled across requests
+  private final Client sharedHttpClient;
+  // Shared by all WSM calls, which pass their access token through AccessTokenContext. The client's
+  // last status code and response headers are overwritten by every call, so they are not used.
+  private final ResourceApi resourceApi;
+  private final WorkspaceApi workspaceApi;
+  private final Cache<ResourceKey, ResourceDescription> resourceCache;
+  private final Cache<WorkspaceKey, WorkspaceDescription> workspaceCache;
+  private final SingleFlight<ResourceKey, ResourceDescription> resourceFlights;
+  private final SingleFlight<WorkspaceKey, WorkspaceDescription> workspaceFlights;
+  private final Bulkhead bulkhead;
+
+  private record ResourceKey(String accessToken, UUID workspaceId, UUID resourceId) {}
+
+  private record WorkspaceKey(String accessToken, UUID workspaceId) {}
 
   @Autowired
-  public WorkspaceManagerService(WsmConfiguration wsmConfig) {
+  public WorkspaceManagerService(WsmConfiguration wsmConfig, MeterRegistry meterRegistry) {
     this.wsmConfig = wsmConfig;
+    this.meterRegistry = meterRegistry;
+    ApiClient apiClient = new ApiClient();
+    this.sharedHttpClient =
+        HttpClientUtils.buildPooledJerseyClient(apiClient.getHttpClient(), wsmConfig.httpClient());
+    apiClient.setHttpClient(sharedHttpClient).setBasePath(wsmConfig.basePath());
+    this.resourceApi = new ResourceApi(apiClient);
+    this.workspaceApi = new WorkspaceApi(apiClient);
+    this.resourceCache = buildCache();
+    this.workspaceCache = buildCache();
+    GuavaCacheMetrics.monitor(meterRegistry, resourceCache, "wsm.resource");
+    GuavaCacheMetrics.monitor(meterRegistry, workspaceCache, "wsm.workspace");
+    this.resourceFlights = new SingleFlight<>("wsm.resource", meterRegistry);
+    this.workspaceFlights = new SingleFlight<>("wsm.workspace", meterRegistry);
+    this.bulkhead = new Bulkhead("wsm", wsmConfig.bulkhead(), meterRegistry);
   }
 
-  private ApiClient getApiClient(String accessToken) {
-    ApiClient apiClient = getApiClient();
-    apiClient.setAccessToken(accessToken);
-    return apiClient;
+  @PreDestroy
+  public void shutdown() {
+    sharedHttpClient.close();
   }
 
-  private ApiClient getApiClient() {
-    return new ApiClient().setBasePath(wsmConfig.basePath());
+  private <K, V> Cache<K, V> buildCache() {
+    return CacheBuilder.newBuilder()
+        .expireAfterWrite(wsmConfig.cacheTtlSeconds(), TimeUnit.SECONDS)
+        .maximumSize(wsmConfig.cacheMaximumSize())
+        .recordStats()
+        .build();
   }
 
   /**
@@ -43,11 +100,11 @@ public class WorkspaceManagerService {
    * @throws NotFoundException if workspace or resource does not exist
    */
   public ResourceDescription getResource(String accessToken, UUID workspaceId, UUID resourceId) {
-    try {
-      return new ResourceApi(getApiClient(accessToken)).getResource(workspaceId, resourceId);
-    } catch (ApiException apiException) {
-      throw new NotFoundException("Unable to access workspace or resource.");
-    }
+    return getCached(
+        resourceCache,
+        resourceFlights,
+        new ResourceKey(accessToken, workspaceId, resourceId),
+        () -> fetchResource(accessToken, workspaceId, resourceId));
   }
 
   /**
@@ -59,12 +116,63 @@ public class WorkspaceManagerService {
    * @throws NotFoundException if workspace does not exist or user does not have access to workspace
    */
   public GcpContext getGcpContext(UUID workspaceId, String accessToken) {
+    return getCached(
+            workspaceCache,
+            workspaceFlights,
+            new WorkspaceKey(accessToken, workspaceId),
+            () -> fetchWorkspace(workspaceId, accessToken))
+        .getGcpContext();
+  }
+
+  private ResourceDescription fetchResource(String accessToken, UUID workspaceId, UUID resourceId) {
     try {
-      return new WorkspaceApi(getApiClient(accessToken))
-          .getWorkspace(workspaceId, null)
-          .getGcpContext();
+      return bulkhead.call(
+          () ->
+              DownstreamMetrics.time(
+                  meterRegistry,
+                  "wsm",
+                  "getResource",
+                  () ->
+                      AccessTokenContext.call(
+                          accessToken, () -> resourceApi.getResource(workspaceId, resourceId))));
+    } catch (ApiException apiException) {
+      throw new NotFoundException("Unable to access workspace or resource.");
+    }
+  }
+
+  private WorkspaceDescription fetchWorkspace(UUID workspaceId, String accessToken) {
+    try {
+      return bulkhead.call(
+          () ->
+              DownstreamMetrics.time(
+                  meterRegistry,
+                  "wsm",
+                  "getWorkspace",
+                  () ->
+                      AccessTokenContext.call(
+                          accessToken, () -> workspaceApi.getWorkspace(workspaceId, null))));
     } catch (ApiException apiException) {
       throw new NotFoundException("Unable to access workspace " + workspaceId + ".");
     }
   }
+
+  /**
+   * Look up a value in a cache, fetching it on a miss. Identical fetches made at the same time,
+   * e.g. by the many requests of one page load, share a single call. Failed fetches are not cached,
+   * and their exception is rethrown to every caller that shared the fetch.
+   */
+  private static <K, V> V getCached(
+      Cache<K, V> cache, SingleFlight<K, V> flights, K key, Supplier<V> fetch) {
+    V cached = cache.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+    return flights.call(
+        key,
+        () -> {
+          V value = fetch.get();
+          cache.put(key, value);
+          return value;
+        });
+  }
 }
@@ -0,0 +1,46 @@
+package bio.terra.axonserver.utils;
+
+import javax.annotation.Nullable;
+
+/**
+ * Access token that downstream calls made by the current thread authenticate with. The generated
+ * ApiClients keep the access token in the client itself, so one client shared by every caller
+ * cannot hold it. Instead the token is set here around each call, and the shared HTTP clients built
+ * by {@link HttpClientUtils} send it as the Authorization header.
+ */
+public class AccessTokenContext {
+
+  private static final ThreadLocal<String> accessToken = new ThreadLocal<>();
+
+  private AccessTokenContext() {}
+
+  /**
+   * Make a call authenticated with an access token.
+   *
+   * @param token access token to send with the HTTP requests the call makes on this thread
+   * @param call makes the call; it runs on the calling thread
+   * @return result of the call
+   */
+  public static <T, E extends Exception> T call(String token, DownstreamMetrics.Call<T, E> call)
+      throws E {
+    String previous = accessToken.get();
+    accessToken.set(token);
+    try {
+      return call.call();
+    } finally {
+      if (previous == null) {
+        accessToken.remove();
+      } else {
+        accessToken.set(previous);
+      }
+    }
+  }
+
+  /**
+   * @return access token of the call in progress on this thread, or null outside of a call
+   */
+  @Nullable
+  public static String get() {
+    return accessToken.get();
+  }
+}
@@ -0,0 +1,122 @@
+package bio.terra.axonserver.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a response body with non-blocking servlet output. The container calls back whenever the
+ * connection can take more bytes, and gets its thread back as soon as the client stops keeping up.
+ * A blocking write instead holds the request thread for the whole download, so a few slow clients
+ * can take up the whole thread pool.
+ *
+ * <p>Reads from the content stream are blocking, and they run on the container thread that calls
+ * onWritePossible, which holds that thread until the read returns. A read waits for at most one
+ * chunk to come from GCS, or for the read-ahead of the next chunk to arrive, so a thread is held
+ * for one GCS round trip at a time rather than for the whole download. Content read straight from a
+ * slower source, such as a conversion too large to cache, holds it for as long as each read takes.
+ *
+ * <p>The container may call onError, onTimeout and onWritePossible from different threads, so the
+ * writer finishes exactly once, whichever of them finishes it first.
+ */
+public class AsyncContentWriter implements WriteListener, AsyncListener {
+
+  private static final Logger logger = LoggerFactory.getLogger(AsyncContentWriter.class);
+
+  private final AsyncContext asyncContext;
+  private final ServletOutputStream out;
+  private final InputStream content;
+  private final byte[] buffer;
+  private final AtomicBoolean finished = new AtomicBoolean();
+
+  private AsyncContentWriter(
+      AsyncContext asyncContext, ServletOutputStream out, InputStream content, int bufferSize) {
+    this.asyncContext = asyncContext;
+    this.out = out;
+    this.content = content;
+    this.buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Put a request in asynchronous mode and write content as its response body. The status and
+   * headers must be set on the response before, and the request thread must return without touching
+   * the response afterwards. The content is closed once it has been written, or when the write
+   * fails or times out.
+   *
+   * @param request request to answer; it must support asynchronous processing
+   * @param content response body
+   * @param timeout time allowed for writing the whole body
+   * @param bufferSize size of the buffer that content is copied through
+   */
+  public static void start(
+      HttpServletRequest request, InputStream content, Duration timeout, int bufferSize)
+      throws IOException {
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(timeout.toMillis());
+    AsyncContentWriter writer =
+        new AsyncContentWriter(
+            asyncContext, asyncContext.getResponse().getOutputStream(), content, bufferSize);
+    asyncContext.addListener(writer);
+    // The container calls onWritePossible right away
+    writer.out.setWriteListener(writer);
+  }
+
+  @Override
+  public void onWritePossible() throws IOException {
+    while (out.isReady()) {
+      int read = content.read(buffer);
+      if (read == -1) {
+        finish();
+        return;
+      }
+      out.write(buffer, 0, read);
+    }
+  }
+
+  /**
+   * Called when writing fails, including when onWritePossible throws. The container closes the
+   * connection, so a client never takes a truncated body for a complete one.
+   */
+  @Override
+  public void onError(Throwable t) {
+    logger.debug("Failed to write response body", t);
+    finish();
+  }
+
+  @Override
+  public void onTimeout(AsyncEvent event) {
+    logger.warn("Timed out writing response body");
+    finish();
+  }
+
+  @Override
+  public void onError(AsyncEvent event) {
+    finish();
+  }
+
+  @Override
+  public void onComplete(AsyncEvent event) {
+    IOUtils.closeQuietly(content);
+  }
+
+  @Override
+  public void onStartAsync(AsyncEvent event) {}
+
+  private void finish() {
+    if (!finished.compareAndSet(false, true)) {
+      return;
+    }
+    IOUtils.closeQuietly(content);
+    asyncContext.complete();
+  }
+}
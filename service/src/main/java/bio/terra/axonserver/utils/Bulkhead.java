@@ -0,0 +1,111 @@
+package bio.terra.axonserver.utils;
+
+import bio.terra.axonserver.app.configuration.BulkheadConfiguration;
+import bio.terra.axonserver.service.exception.DownstreamSaturatedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the calls made at the same time to one downstream service. Calls over the limit wait for
+ * one in flight to finish, up to a bounded number of waiting calls and a bounded wait, and are
+ * rejected with a {@link DownstreamSaturatedException} otherwise. A slow service then only ties up
+ * as many request threads as its limits allow, and the requests that do not need it are still
+ * served, instead of every thread ending up blocked on it.
+ *
+ * <p>Saturation is exported as the bulkhead.active and bulkhead.queued gauges, next to the
+ * bulkhead.limit gauge, and rejections are counted by the bulkhead.rejected counter, tagged with
+ * why the call was rejected. Every meter is tagged with the downstream service.
+ */
+public class Bulkhead {
+
+  private final String downstream;
+  private final BulkheadConfiguration config;
+  private final Semaphore permits;
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final Counter rejectedQueueFull;
+  private final Counter rejectedTimeout;
+
+  /**
+   * @param downstream service called, e.g. wsm or gcs, used to tag the metrics
+   * @param config limits on the calls
+   * @param meterRegistry registry to export the metrics to
+   */
+  public Bulkhead(String downstream, BulkheadConfiguration config, MeterRegistry meterRegistry) {
+    this.downstream = downstream;
+    this.config = config;
+    this.permits = new Semaphore(config.maxConcurrentCalls());
+    Gauge.builder("bulkhead.active", active, AtomicInteger::get)
+        .description("Calls in flight to a downstream service")
+        .tag("downstream", downstream)
+        .register(meterRegistry);
+    Gauge.builder("bulkhead.queued", queued, AtomicInteger::get)
+        .description("Calls waiting for a call in flight to a downstream service to finish")
+        .tag("downstream", downstream)
+        .register(meterRegistry);
+    Gauge.builder("bulkhead.limit", config, BulkheadConfiguration::maxConcurrentCalls)
+        .description("Maximum number of calls in flight to a downstream service")
+        .tag("downstream", downstream)
+        .register(meterRegistry);
+    this.rejectedQueueFull = rejectedCounter(meterRegistry, "queueFull");
+    this.rejectedTimeout = rejectedCounter(meterRegistry, "timeout");
+  }
+
+  private Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+    return Counter.builder("bulkhead.rejected")
+        .description("Calls to a downstream service rejected by its bulkhead")
+        .tag("downstream", downstream)
+        .tag("reason", reason)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Make a call once the number of calls in flight is under the limit.
+   *
+   * @param call makes the call; it runs on the calling thread
+   * @return result of the call
+   * @throws DownstreamSaturatedException if the call is rejected
+   */
+  public <T, E extends Exception> T call(DownstreamMetrics.Call<T, E> call) throws E {
+    acquire();
+    active.incrementAndGet();
+    try {
+      return call.call();
+    } finally {
+      active.decrementAndGet();
+      permits.release();
+    }
+  }
+
+  private void acquire() {
+    if (permits.tryAcquire()) {
+      return;
+    }
+    if (queued.incrementAndGet() > config.maxQueuedCalls()) {
+      queued.decrementAndGet();
+      rejectedQueueFull.increment();
+      throw saturated();
+    }
+    try {
+      if (!permits.tryAcquire(config.maxWaitMillis(), TimeUnit.MILLISECONDS)) {
+        rejectedTimeout.increment();
+        throw saturated();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw saturated();
+    } finally {
+      queued.decrementAndGet();
+    }
+  }
+
+  private DownstreamSaturatedException saturated() {
+    return new DownstreamSaturatedException(
+        "Too many requests to " + downstream + " in progress; try again later",
+        config.retryAfterSeconds());
+  }
+}
@@ -0,0 +1,68 @@
+package bio.terra.axonserver.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.http.HttpRange;
+
+/**
+ * A satisfiable range of bytes within an object of known size.
+ *
+ * @param start offset of the first byte in the range
+ * @param end offset of the last byte in the range, inclusive
+ */
+public record ByteRange(long start, long end) {
+
+  public long length() {
+    return end - start + 1;
+  }
+
+  /**
+   * Get the Content-Range header value for this range.
+   *
+   * @param objectSize size of the whole object
+   * @return Content-Range header value
+   */
+  public String toContentRange(long objectSize) {
+    return "bytes " + start + "-" + end + "/" + objectSize;
+  }
+
+  /**
+   * Resolve a requested range against the size of an object. Suffix ranges count back from the end
+   * of the object, and end offsets past the end of the object are clamped to its last byte.
+   *
+   * @param range requested range
+   * @param objectSize size of the whole object
+   * @return the resolved range, or empty if the range does not cover any byte of the object
+   */
+  public static Optional<ByteRange> resolve(HttpRange range, long objectSize) {
+    long start = range.getRangeStart(objectSize);
+    long end = range.getRangeEnd(objectSize);
+    return end < start ? Optional.empty() : Optional.of(new ByteRange(start, end));
+  }
+
+  /**
+   * Merge ranges that overlap or are separated by at most maxGap bytes.
+   *
+   * @param ranges ranges in any order
+   * @param maxGap largest number of bytes between two ranges for them to be merged; 0 merges only
+   *     overlapping and adjacent ranges
+   * @return merged ranges, ordered by offset
+   */
+  public static List<ByteRange> coalesce(List<ByteRange> ranges, long maxGap) {
+    List<ByteRange> sorted = new ArrayList<>(ranges);
+    sorted.sort(Comparator.comparingLong(ByteRange::start));
+    List<ByteRange> merged = new ArrayList<>();
+    for (ByteRange range : sorted) {
+      int last = merged.size() - 1;
+      if (last >= 0 && range.start() - merged.get(last).end() - 1 <= maxGap) {
+        ByteRange previous = merged.get(last);
+        merged.set(last, new ByteRange(previous.start(), Math.max(previous.end(), range.end())));
+      } else {
+        merged.add(range);
+      }
+    }
+    return merged;
+  }
+}
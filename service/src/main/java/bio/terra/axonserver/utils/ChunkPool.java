@@ -0,0 +1,45 @@
+package bio.terra.axonserver.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A pool of equally sized byte arrays, for buffers that are filled and released over and over. At
+ * most a fixed number of idle chunks is kept; chunks released beyond that are left to the garbage
+ * collector. Thread safe.
+ */
+public class ChunkPool {
+
+  private final int chunkSize;
+  private final BlockingQueue<byte[]> idleChunks;
+
+  /**
+   * @param chunkSize size of each chunk in bytes
+   * @param maximumIdleChunks largest number of released chunks kept for reuse
+   */
+  public ChunkPool(int chunkSize, int maximumIdleChunks) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+    }
+    this.chunkSize = chunkSize;
+    // ArrayBlockingQueue does not accept a capacity of zero
+    this.idleChunks = new ArrayBlockingQueue<>(Math.max(maximumIdleChunks, 1));
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /** Take an idle chunk, or allocate a new one if there is none. Its content is undefined. */
+  public byte[] acquire() {
+    byte[] chunk = idleChunks.poll();
+    return chunk != null ? chunk : new byte[chunkSize];
+  }
+
+  /** Give a chunk back for reuse. The caller must not use it afterwards. */
+  public void release(byte[] chunk) {
+    if (chunk.length == chunkSize) {
+      idleChunks.offer(chunk);
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package bio.terra.axonserver.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An output stream that collects bytes in fixed size chunks taken from a {@link ChunkPool}, and
+ * throws an IndexOutOfBoundsException if the given byte limit is exceeded.
+ *
+ * <p>Unlike a {@link java.io.ByteArrayOutputStream}, writes take no lock, growing never copies the
+ * bytes written so far, and the content is read back from the chunks without first copying it into
+ * a single array. The stream is not thread safe while it is written to, but once written, any
+ * number of threads may read its content at once. Call {@link #release()} once the content is no
+ * longer needed to return the chunks to the pool.
+ */
+public class ChunkedByteArrayOutputStream extends OutputStream {
+
+  private final ChunkPool pool;
+  private final long limit;
+  private final List<byte[]> chunks = new ArrayList<>();
+  private long count;
+  // Bytes used in the last chunk
+  private int lastChunkCount;
+
+  /**
+   * @param pool pool to take chunks from
+   * @param limit largest number of bytes the stream accepts
+   */
+  public ChunkedByteArrayOutputStream(ChunkPool pool, long limit) {
+    this.pool = pool;
+    this.limit = limit;
+  }
+
+  @Override
+  public void write(int b) {
+    if (count + 1 > limit) {
+      throw new IndexOutOfBoundsException("Buffer limit of " + limit + " bytes exceeded");
+    }
+    if (chunks.isEmpty() || lastChunkCount == pool.getChunkSize()) {
+      addChunk();
+    }
+    chunks.get(chunks.size() - 1)[lastChunkCount++] = (byte) b;
+    count++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    Objects.checkFromIndexSize(off, len, b.length);
+    if (count + len > limit) {
+      throw new IndexOutOfBoundsException("Buffer limit of " + limit + " bytes exceeded");
+    }
+    while (len > 0) {
+      if (chunks.isEmpty() || lastChunkCount == pool.getChunkSize()) {
+        addChunk();
+      }
+      int copied = Math.min(len, pool.getChunkSize() - lastChunkCount);
+      System.arraycopy(b, off, chunks.get(chunks.size() - 1), lastChunkCount, copied);
+      lastChunkCount += copied;
+      count += copied;
+      off += copied;
+      len -= copied;
+    }
+  }
+
+  private void addChunk() {
+    chunks.add(pool.acquire());
+    lastChunkCount = 0;
+  }
+
+  /** Number of bytes written. */
+  public long size() {
+    return count;
+  }
+
+  /** Number of bytes held, including the unused end of the last chunk. */
+  public long capacity() {
+    return (long) chunks.size() * pool.getChunkSize();
+  }
+
+  /**
+   * The content as read-only buffers over the chunks, in order. The buffers are only valid until
+   * the stream is written to again or released.
+   */
+  public List<ByteBuffer> toByteBuffers() {
+    List<ByteBuffer> buffers = new ArrayList<>(chunks.size());
+    for (int i = 0; i < chunks.size(); i++) {
+      buffers.add(ByteBuffer.wrap(chunks.get(i), 0, chunkCount(i)).asReadOnlyBuffer());
+    }
+    return buffers;
+  }
+
+  /**
+   * The content as a stream that reads from the chunks. The stream is only valid until this stream
+   * is written to again or released.
+   */
+  public InputStream toInputStream() {
+    return new ChunkInputStream();
+  }
+
+  /** Write the content to another stream. */
+  public void writeTo(OutputStream out) throws IOException {
+    for (int i = 0; i < chunks.size(); i++) {
+      out.write(chunks.get(i), 0, chunkCount(i));
+    }
+  }
+
+  /** Discard the content and return its chunks to the pool. The stream may be written again. */
+  public void release() {
+    chunks.forEach(pool::release);
+    chunks.clear();
+    count = 0;
+    lastChunkCount = 0;
+  }
+
+  private int chunkCount(int index) {
+    return index == chunks.size() - 1 ? lastChunkCount : pool.getChunkSize();
+  }
+
+  private class ChunkInputStream extends InputStream {
+
+    private int chunkIndex;
+    private int chunkPosition;
+
+    @Override
+    public int read() {
+      if (!hasRemaining()) {
+        return -1;
+      }
+      return chunks.get(chunkIndex)[chunkPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      Objects.checkFromIndexSize(off, len, b.length);
+      if (len == 0) {
+        return 0;
+      }
+      if (!hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(len, chunkCount(chunkIndex) - chunkPosition);
+      System.arraycopy(chunks.get(chunkIndex), chunkPosition, b, off, read);
+      chunkPosition += read;
+      return read;
+    }
+
+    /** Writes the remaining chunks directly, without copying them through a transfer buffer. */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+      long transferred = 0;
+      while (hasRemaining()) {
+        int length = chunkCount(chunkIndex) - chunkPosition;
+        out.write(chunks.get(chunkIndex), chunkPosition, length);
+        chunkPosition += length;
+        transferred += length;
+      }
+      return transferred;
+    }
+
+    @Override
+    public int available() {
+      return hasRemaining() ? chunkCount(chunkIndex) - chunkPosition : 0;
+    }
+
+    /** Move to the next chunk once the current one is read, and tell if any bytes are left. */
+    private boolean hasRemaining() {
+      if (chunkIndex < chunks.size() && chunkPosition == chunkCount(chunkIndex)) {
+        chunkIndex++;
+        chunkPosition = 0;
+      }
+      return chunkIndex < chunks.size() && chunkPosition < chunkCount(chunkIndex);
+    }
+  }
+}
@@ -2,29 +2,43 @@ package bio.terra.axonserver.utils;
 
 import bio.terra.axonserver.service.exception.CloudObjectReadException;
 import bio.terra.common.exception.BadRequestException;
+import bio.terra.common.exception.ForbiddenException;
+import bio.terra.common.exception.NotFoundException;
+import com.google.api.gax.paging.Page;
 import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.ReadChannel;
 import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.Storage;
-import com.google.cloud.storage.StorageOptions;
+import com.google.cloud.storage.StorageException;
 import com.google.common.collect.ImmutableList;
+import io.micrometer.core.instrument.Metrics;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLDecoder;
 import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import javax.annotation.Nullable;
-import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.util.unit.DataSize;
 
-/** Service for interacting with Google Cloud Storage */
+/**
+ * Service for interacting with Google Cloud Storage
+ *
+ * <p>GCS calls are timed by the axonserver.downstream timer with downstream=gcs; see {@link
+ * DownstreamMetrics}. The times are recorded in the global registry, which Spring Boot adds its
+ * registry to.
+ */
 public class CloudStorageUtils {
 
-  private static final int MAX_OBJECT_SIZE = (int) DataSize.ofMegabytes(512).toBytes();
-  private static final int MAX_BUFFER_SIZE = (int) DataSize.ofKilobytes(64).toBytes();
+  // Largest object that is read whole, e.g. to convert it
+  public static final int MAX_OBJECT_SIZE = (int) DataSize.ofMegabytes(512).toBytes();
+  // Size of the buffer that object content is read through
+  public static final int MAX_BUFFER_SIZE = (int) DataSize.ofKilobytes(64).toBytes();
 
   // Google pet service account scopes for accessing Google Cloud APIs.
   private static final List<String> PET_SA_SCOPES =
@@ -50,42 +64,180 @@ public class CloudStorageUtils {
   }
 
   /**
-   * Get the contents of a GCS bucket object
+   * Get the contents of a GCS bucket object without fetching its metadata first. The first chunk is
+   * read before returning, so a missing object or denied access fails here rather than after the
+   * response has started.
    *
-   * @param googleCredentials Google credentials to use for the request
-   * @param bucketName Name of the bucket
-   * @param objectName Name of the object
-   * @param byteRange Byte range to read from the object
+   * @param gcs Storage client to use for the request
+   * @param blobId Object to read. If it has a generation, that generation is read.
+   * @param byteRange Byte range to read from the object, or null to read the whole object
    * @return InputStream for the object content
    */
   public static InputStream getBucketObject(
-      GoogleCredentials googleCredentials,
-      String bucketName,
-      String objectName,
-      @Nullable HttpRange byteRange) {
+      Storage gcs, BlobId blobId, @Nullable ByteRange byteRange) {
+    return getBucketObject(gcs, blobId, byteRange, null);
+  }
 
-    // decode encoded slashes in object path
-    try {
-      objectName = URLDecoder.decode(objectName, StandardCharsets.UTF_8.toString());
-    } catch (Exception e) {
-      throw new BadRequestException("Bad object path: " + objectName);
-    }
+  /**
+   * Get the contents of a GCS bucket object, reading it through a buffer of the given size. See
+   * {@link #getBucketObject(Storage, BlobId, ByteRange)}.
+   *
+   * @param gcs Storage client to use for the request
+   * @param blobId Object to read. If it has a generation, that generation is read.
+   * @param byteRange Byte range to read from the object, or null to read the whole object
+   * @param chunkSize Size of the read channel's buffer, or null for the client default
+   * @return InputStream for the object content
+   */
+  public static InputStream getBucketObject(
+      Storage gcs, BlobId blobId, @Nullable ByteRange byteRange, @Nullable Integer chunkSize) {
+    // As the first chunk is read before returning, this times the first byte of the content.
+    return DownstreamMetrics.time(
+        Metrics.globalRegistry,
+        "gcs",
+        "readObject",
+        () -> openBucketObject(gcs, blobId, byteRange, chunkSize));
+  }
 
+  private static InputStream openBucketObject(
+      Storage gcs, BlobId blobId, @Nullable ByteRange byteRange, @Nullable Integer chunkSize) {
     try {
-      // Get the ReadChannel for the object
-      Storage gcs =
-          StorageOptions.newBuilder().setCredentials(googleCredentials).build().getService();
-      Blob blob = gcs.get(BlobId.of(bucketName, objectName));
-      ReadChannel readChannel = blob.reader();
+      ReadChannel readChannel = gcs.reader(blobId);
+      if (chunkSize != null) {
+        readChannel.setChunkSize(chunkSize);
+      }
 
       // Seek to the specified readChannel range if byteRange is provided
       if (byteRange != null) {
-        readChannel.seek(byteRange.getRangeStart(Long.MAX_VALUE));
-        readChannel.limit(byteRange.getRangeEnd(Long.MAX_VALUE));
+        readChannel.seek(byteRange.start());
+        // The limit is the offset to stop reading at, one past the last byte of the range
+        readChannel.limit(byteRange.end() + 1);
       }
-      return Channels.newInputStream(readChannel);
+      InputStream objectStream =
+          new BufferedInputStream(Channels.newInputStream(readChannel), MAX_BUFFER_SIZE);
+      objectStream.mark(1);
+      objectStream.read();
+      objectStream.reset();
+      return objectStream;
+    } catch (StorageException e) {
+      throw translateStorageException(blobId, e);
     } catch (IOException e) {
-      throw new CloudObjectReadException("Error reading GCS object: " + objectName);
+      // The read channel reports request failures as an IOException around a StorageException
+      if (e.getCause() instanceof StorageException storageException) {
+        throw translateStorageException(blobId, storageException);
+      }
+      throw new CloudObjectReadException("Error reading GCS object: " + blobId.getName(), e);
+    }
+  }
+
+  /**
+   * Get the metadata of a GCS bucket object. Only call this when the metadata is needed, as it
+   * costs a round trip to GCS of its own.
+   *
+   * @param gcs Storage client to use for the request
+   * @param blobId Object to describe. If it has a generation, that generation is described.
+   * @return Object metadata
+   * @throws NotFoundException if the object does not exist
+   */
+  public static Blob getBucketObjectMetadata(Storage gcs, BlobId blobId) {
+    Blob blob;
+    try {
+      blob =
+          DownstreamMetrics.time(
+              Metrics.globalRegistry, "gcs", "getObjectMetadata", () -> gcs.get(blobId));
+    } catch (StorageException e) {
+      throw translateStorageException(blobId, e);
+    }
+    if (blob == null) {
+      throw new NotFoundException("GCS object not found: " + blobId.getName());
+    }
+    return blob;
+  }
+
+  /**
+   * List a page of the objects in a GCS bucket. Only the object fields that a listing shows are
+   * fetched.
+   *
+   * @param gcs Storage client to use for the request
+   * @param bucketName Bucket to list
+   * @param prefix Only list objects whose names start with this prefix, or null for all objects
+   * @param delimiter Group objects whose names contain the delimiter after the prefix into a single
+   *     prefix, or null to list every object
+   * @param pageToken Token of the page to list, or null for the first page
+   * @param pageSize Largest number of objects and prefixes to list
+   * @return The page, with prefixes listed as directories
+   * @throws BadRequestException if GCS rejects the listing, e.g. for an invalid page token
+   */
+  public static Page<Blob> listBucketObjects(
+      Storage gcs,
+      String bucketName,
+      @Nullable String prefix,
+      @Nullable String delimiter,
+      @Nullable String pageToken,
+      int pageSize) {
+    List<Storage.BlobListOption> options = new ArrayList<>();
+    options.add(Storage.BlobListOption.pageSize(pageSize));
+    options.add(
+        Storage.BlobListOption.fields(
+            Storage.BlobField.NAME,
+            Storage.BlobField.SIZE,
+            Storage.BlobField.GENERATION,
+            Storage.BlobField.CONTENT_TYPE,
+            Storage.BlobField.UPDATED));
+    if (prefix != null) {
+      options.add(Storage.BlobListOption.prefix(prefix));
+    }
+    if (delimiter != null) {
+      options.add(Storage.BlobListOption.delimiter(delimiter));
+    }
+    if (pageToken != null) {
+      options.add(Storage.BlobListOption.pageToken(pageToken));
+    }
+    try {
+      return DownstreamMetrics.time(
+          Metrics.globalRegistry,
+          "gcs",
+          "listObjects",
+          () -> gcs.list(bucketName, options.toArray(Storage.BlobListOption[]::new)));
+    } catch (StorageException e) {
+      if (e.getCode() == HttpStatus.BAD_REQUEST.value()) {
+        throw new BadRequestException("Invalid listing of GCS bucket: " + bucketName, e);
+      }
+      throw translateStorageException("GCS bucket", bucketName, e);
+    }
+  }
+
+  /**
+   * Decode encoded slashes in an object path
+   *
+   * @param objectName Object path as given in the request
+   * @return Decoded object name
+   */
+  public static String decodeObjectName(String objectName) {
+    try {
+      return URLDecoder.decode(objectName, StandardCharsets.UTF_8.toString());
+    } catch (Exception e) {
+      throw new BadRequestException("Bad object path: " + objectName);
+    }
+  }
+
+  private static RuntimeException translateStorageException(BlobId blobId, StorageException e) {
+    return translateStorageException("GCS object", blobId.getName(), e);
+  }
+
+  /**
+   * @param kind what was read, e.g. "GCS object"
+   * @param name name of what was read
+   */
+  private static RuntimeException translateStorageException(
+      String kind, String name, StorageException e) {
+    HttpStatus status = HttpStatus.resolve(e.getCode());
+    if (status == null) {
+      return new CloudObjectReadException("Error reading " + kind + ": " + name, e);
     }
+    return switch (status) {
+      case NOT_FOUND -> new NotFoundException(kind + " not found: " + name, e);
+      case FORBIDDEN -> new ForbiddenException("Access denied to " + kind + ": " + name, e);
+      default -> new CloudObjectReadException("Error reading " + kind + ": " + name, e);
+    };
   }
 }
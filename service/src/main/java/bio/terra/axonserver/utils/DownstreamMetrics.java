@@ -0,0 +1,54 @@
+package bio.terra.axonserver.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times calls to the services a request depends on. Every call is recorded by the
+ * axonserver.downstream timer, tagged with the downstream service, the operation and whether the
+ * call succeeded, so that the time of a slow request can be attributed to the hop it was spent in.
+ */
+public class DownstreamMetrics {
+
+  public static final String TIMER_NAME = "axonserver.downstream";
+
+  /**
+   * A call to a downstream service.
+   *
+   * @param <T> result of the call
+   * @param <E> checked exception the call throws, if any
+   */
+  @FunctionalInterface
+  public interface Call<T, E extends Exception> {
+    T call() throws E;
+  }
+
+  /**
+   * Make a call, timing it.
+   *
+   * @param meterRegistry registry to record the time in
+   * @param downstream service called, e.g. wsm or gcs
+   * @param operation operation called
+   * @param call makes the call
+   * @return result of the call
+   */
+  public static <T, E extends Exception> T time(
+      MeterRegistry meterRegistry, String downstream, String operation, Call<T, E> call) throws E {
+    long start = System.nanoTime();
+    boolean succeeded = false;
+    try {
+      T result = call.call();
+      succeeded = true;
+      return result;
+    } finally {
+      Timer.builder(TIMER_NAME)
+          .description("Calls to downstream services")
+          .tag("downstream", downstream)
+          .tag("operation", operation)
+          .tag("outcome", succeeded ? "success" : "failure")
+          .register(meterRegistry)
+          .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+}
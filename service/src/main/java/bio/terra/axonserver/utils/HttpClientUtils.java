@@ -0,0 +1,184 @@
+package bio.terra.axonserver.utils;
+
+import bio.terra.axonserver.app.configuration.HttpClientConfiguration;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+
+/**
+ * Builds the HTTP clients shared by all calls to a downstream service. The generated API clients
+ * otherwise build a new HTTP client, and with it a new connection pool, for every call.
+ *
+ * <p>Requests made inside {@link AccessTokenContext#call} are sent with that call's access token as
+ * a bearer token, unless they already carry an Authorization header.
+ */
+public class HttpClientUtils {
+
+  public HttpClientUtils() {}
+
+  /**
+   * Build a Jersey client backed by a bounded, keep-alive connection pool. The client is thread
+   * safe and should be closed when it is no longer used.
+   *
+   * @param generatedClient client built by a generated ApiClient, used as a template for the
+   *     registered features and JSON mapping; it is closed by this method
+   * @param config connection pool settings
+   * @return pooled Jersey client
+   */
+  public static Client buildPooledJerseyClient(
+      Client generatedClient, HttpClientConfiguration config) {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(config.maxConnections());
+    // Each client talks to a single service, so one route may use the whole pool.
+    connectionManager.setDefaultMaxPerRoute(config.maxConnections());
+    long keepAliveMillis = TimeUnit.SECONDS.toMillis(config.keepAliveSeconds());
+
+    ClientConfig clientConfig =
+        new ClientConfig()
+            .loadFrom(generatedClient.getConfiguration())
+            .connectorProvider(new ApacheConnectorProvider())
+            .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+            .property(
+                ApacheClientProperties.KEEPALIVE_STRATEGY,
+                (ConnectionKeepAliveStrategy) (response, context) -> keepAliveMillis)
+            .property(ClientProperties.CONNECT_TIMEOUT, config.connectTimeoutMillis())
+            .property(ClientProperties.READ_TIMEOUT, config.readTimeoutMillis())
+            // Send request bodies with a Content-Length, as the default connector does.
+            .property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.BUFFERED)
+            .register(
+                (ClientRequestFilter)
+                    request -> {
+                      String accessToken = AccessTokenContext.get();
+                      if (accessToken != null
+                          && !request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)) {
+                        request
+                            .getHeaders()
+                            .add(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+                      }
+                    });
+    generatedClient.close();
+    return ClientBuilder.newClient(clientConfig);
+  }
+
+  /**
+   * Build an OkHttp client with a bounded, keep-alive connection pool. OkHttp clients are thread
+   * safe and hold no resources beyond their pool, so they do not need to be closed.
+   *
+   * <p>OkHttp's connection pool only bounds the idle connections it keeps, and its dispatcher only
+   * limits asynchronous calls, while the generated ApiClients make synchronous calls. The client
+   * therefore caps the requests in flight itself, from sending a request until its response body is
+   * closed, which also caps the connections in use. A request waits up to the connect timeout for
+   * one in flight to finish.
+   *
+   * @param generatedClient client built by a generated ApiClient, used as a template for its
+   *     interceptors
+   * @param config connection pool settings
+   * @return pooled OkHttp client
+   */
+  public static OkHttpClient buildPooledOkHttpClient(
+      OkHttpClient generatedClient, HttpClientConfiguration config) {
+    return generatedClient
+        .newBuilder()
+        .connectionPool(
+            new ConnectionPool(
+                config.maxConnections(), config.keepAliveSeconds(), TimeUnit.SECONDS))
+        .connectTimeout(config.connectTimeoutMillis(), TimeUnit.MILLISECONDS)
+        .readTimeout(config.readTimeoutMillis(), TimeUnit.MILLISECONDS)
+        .addInterceptor(new ConnectionLimit(config.maxConnections(), config.connectTimeoutMillis()))
+        .addInterceptor(
+            chain -> {
+              String accessToken = AccessTokenContext.get();
+              Request request = chain.request();
+              if (accessToken == null || request.header(HttpHeaders.AUTHORIZATION) != null) {
+                return chain.proceed(request);
+              }
+              return chain.proceed(
+                  request
+                      .newBuilder()
+                      .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                      .build());
+            })
+        .build();
+  }
+
+  /** Caps the requests an OkHttp client has in flight, until their response bodies are closed. */
+  private static class ConnectionLimit implements Interceptor {
+
+    private final Semaphore permits;
+    private final int maxWaitMillis;
+
+    ConnectionLimit(int maxConnections, int maxWaitMillis) {
+      this.permits = new Semaphore(maxConnections);
+      this.maxWaitMillis = maxWaitMillis;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+      try {
+        if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+          throw new IOException(
+              "Timed out waiting for a connection to " + chain.request().url().host());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for a connection");
+      }
+      AtomicBoolean released = new AtomicBoolean();
+      Runnable release =
+          () -> {
+            if (released.compareAndSet(false, true)) {
+              permits.release();
+            }
+          };
+      try {
+        Response response = chain.proceed(chain.request());
+        ResponseBody body = response.body();
+        if (body == null) {
+          release.run();
+          return response;
+        }
+        BufferedSource source =
+            Okio.buffer(
+                new ForwardingSource(body.source()) {
+                  @Override
+                  public void close() throws IOException {
+                    try {
+                      super.close();
+                    } finally {
+                      release.run();
+                    }
+                  }
+                });
+        return response
+            .newBuilder()
+            .body(ResponseBody.create(source, body.contentType(), body.contentLength()))
+            .build();
+      } catch (IOException | RuntimeException e) {
+        release.run();
+        throw e;
+      }
+    }
+  }
+}
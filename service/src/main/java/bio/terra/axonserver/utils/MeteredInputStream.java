@@ -0,0 +1,105 @@
+package bio.terra.axonserver.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a response body as it is streamed to the client. Bodies are read as they are written, so
+ * reads stand for writes to the client:
+ *
+ * <ul>
+ *   <li>axonserver.file.firstByte times the request from its start to the first byte of the body,
+ *       which covers every lookup and the first read from GCS or Calhoun
+ *   <li>axonserver.file.stream times the rest of the request, from the first byte until the body is
+ *       closed, tagged with whether the whole body was sent
+ *   <li>axonserver.file.bytesStreamed counts the bytes sent, as they are sent
+ * </ul>
+ *
+ * Each meter is tagged with the kind of content sent, e.g. a whole file or a range.
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+  private final MeterRegistry meterRegistry;
+  private final String contentKind;
+  private final long requestStartNanos;
+  private final Counter bytesStreamed;
+  private boolean started;
+  private long firstByteNanos;
+  private boolean finished;
+  private boolean closed;
+
+  /**
+   * @param in response body
+   * @param meterRegistry registry to record the measurements in
+   * @param contentKind kind of content sent
+   * @param requestStartNanos {@link System#nanoTime()} at the start of the request
+   */
+  public MeteredInputStream(
+      InputStream in, MeterRegistry meterRegistry, String contentKind, long requestStartNanos) {
+    super(in);
+    this.meterRegistry = meterRegistry;
+    this.contentKind = contentKind;
+    this.requestStartNanos = requestStartNanos;
+    this.bytesStreamed =
+        Counter.builder("axonserver.file.bytesStreamed")
+            .description("Bytes of file content sent to clients")
+            .baseUnit(BaseUnits.BYTES)
+            .tag("content", contentKind)
+            .register(meterRegistry);
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    recordRead(b == -1 ? -1 : 1);
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int read = super.read(b, off, len);
+    recordRead(read);
+    return read;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      if (!closed) {
+        closed = true;
+        long streamStart = started ? firstByteNanos : System.nanoTime();
+        Timer.builder("axonserver.file.stream")
+            .description("Time spent sending file content to clients")
+            .tag("content", contentKind)
+            .tag("outcome", finished ? "complete" : "incomplete")
+            .register(meterRegistry)
+            .record(System.nanoTime() - streamStart, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  private void recordRead(int read) {
+    if (read == -1) {
+      finished = true;
+      return;
+    }
+    if (read > 0 && !started) {
+      started = true;
+      firstByteNanos = System.nanoTime();
+      Timer.builder("axonserver.file.firstByte")
+          .description("Time from the start of a file request to the first byte of its content")
+          .tag("content", contentKind)
+          .register(meterRegistry)
+          .record(firstByteNanos - requestStartNanos, TimeUnit.NANOSECONDS);
+    }
+    bytesStreamed.increment(read);
+  }
+}
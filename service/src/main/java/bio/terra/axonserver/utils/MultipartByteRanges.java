@@ -0,0 +1,90 @@
+package bio.terra.axonserver.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Body of a multipart/byteranges response, with one part for each of several ranges of an object.
+ * See <a href="https://www.rfc-editor.org/rfc/rfc7233#appendix-A">RFC 7233 appendix A</a>.
+ */
+public class MultipartByteRanges {
+
+  private final String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+  private final List<ByteRange> ranges;
+  private final List<byte[]> partHeaders = new ArrayList<>();
+  private final byte[] closingDelimiter;
+
+  /**
+   * @param ranges ranges of the object, in the order they are sent
+   * @param contentType content type of the object, or null if unknown
+   * @param objectSize size of the whole object
+   */
+  public MultipartByteRanges(
+      List<ByteRange> ranges, @Nullable String contentType, long objectSize) {
+    this.ranges = ranges;
+    for (ByteRange range : ranges) {
+      StringBuilder header = new StringBuilder("\r\n--").append(boundary).append("\r\n");
+      if (contentType != null) {
+        header.append(HttpHeaders.CONTENT_TYPE).append(": ").append(contentType).append("\r\n");
+      }
+      header
+          .append(HttpHeaders.CONTENT_RANGE)
+          .append(": ")
+          .append(range.toContentRange(objectSize))
+          .append("\r\n\r\n");
+      partHeaders.add(header.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+    this.closingDelimiter = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /** Content-Type header value of the multipart body. */
+  public String getContentType() {
+    return "multipart/byteranges; boundary=" + boundary;
+  }
+
+  /** Length of the multipart body, including the framing around the parts. */
+  public long getContentLength() {
+    long length = closingDelimiter.length;
+    for (int i = 0; i < ranges.size(); i++) {
+      length += partHeaders.get(i).length + ranges.get(i).length();
+    }
+    return length;
+  }
+
+  /**
+   * Frame content into the multipart body.
+   *
+   * @param content bytes of all ranges back to back, in the order of the ranges
+   * @return multipart body; closing it closes content
+   */
+  public InputStream toInputStream(InputStream content) {
+    List<InputStream> parts = new ArrayList<>();
+    for (int i = 0; i < ranges.size(); i++) {
+      parts.add(new ByteArrayInputStream(partHeaders.get(i)));
+      BoundedInputStream partContent = new BoundedInputStream(content, ranges.get(i).length());
+      partContent.setPropagateClose(false);
+      parts.add(partContent);
+    }
+    parts.add(new ByteArrayInputStream(closingDelimiter));
+    return new SequenceInputStream(Collections.enumeration(parts)) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          content.close();
+        }
+      }
+    };
+  }
+}
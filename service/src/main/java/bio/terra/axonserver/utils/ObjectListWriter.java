@@ -0,0 +1,71 @@
+package bio.terra.axonserver.utils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.cloud.storage.BlobInfo;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import javax.annotation.Nullable;
+
+/**
+ * Writes a page of a bucket listing as JSON, in the shape of the ObjectList API model. Each object
+ * is written straight to the output as it is iterated, rather than first being copied into API
+ * models and serialized as a whole.
+ */
+public class ObjectListWriter {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private ObjectListWriter() {}
+
+  /**
+   * @param out stream to write to; it is flushed but not closed
+   * @param page objects of the page, with prefixes listed as directories
+   * @param nextPageToken token for listing the next page, or null on the last page
+   */
+  public static void write(
+      OutputStream out, Iterable<? extends BlobInfo> page, @Nullable String nextPageToken)
+      throws IOException {
+    try (JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+      json.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+      json.writeStartObject();
+
+      json.writeArrayFieldStart("objects");
+      for (BlobInfo blob : page) {
+        if (!blob.isDirectory()) {
+          writeObject(json, blob);
+        }
+      }
+      json.writeEndArray();
+
+      json.writeArrayFieldStart("prefixes");
+      for (BlobInfo blob : page) {
+        if (blob.isDirectory()) {
+          json.writeString(blob.getName());
+        }
+      }
+      json.writeEndArray();
+
+      if (nextPageToken != null) {
+        json.writeStringField("nextPageToken", nextPageToken);
+      }
+      json.writeEndObject();
+    }
+  }
+
+  private static void writeObject(JsonGenerator json, BlobInfo blob) throws IOException {
+    json.writeStartObject();
+    json.writeStringField("name", blob.getName());
+    json.writeNumberField("size", blob.getSize() == null ? 0 : blob.getSize());
+    json.writeNumberField("generation", blob.getGeneration() == null ? 0 : blob.getGeneration());
+    if (blob.getContentType() != null) {
+      json.writeStringField("contentType", blob.getContentType());
+    }
+    if (blob.getUpdateTime() != null) {
+      json.writeStringField("updated", Instant.ofEpochMilli(blob.getUpdateTime()).toString());
+    }
+    json.writeEndObject();
+  }
+}
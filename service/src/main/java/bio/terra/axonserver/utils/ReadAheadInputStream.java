@@ -0,0 +1,136 @@
+package bio.terra.axonserver.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads a stream one chunk ahead of its reader. While the reader consumes one chunk, the next chunk
+ * is read from the source on an executor, so reading the source overlaps with whatever the reader
+ * does with the bytes, e.g. writing them to a client. Two chunks are held at a time.
+ *
+ * <p>Like other streams, this stream is not thread safe. The source is only ever read by one thread
+ * at a time.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+  private final InputStream source;
+  private final int chunkSize;
+  private final Executor executor;
+
+  private byte[] current = new byte[0];
+  private int position;
+  private int limit;
+  // The read of the next chunk, or null once the source is exhausted
+  private CompletableFuture<Chunk> next;
+  private boolean closed;
+
+  private record Chunk(byte[] buffer, int length) {}
+
+  /**
+   * @param source stream to read ahead of; it is closed when this stream is closed
+   * @param chunkSize number of bytes read ahead
+   * @param executor runs the reads of the source
+   */
+  public ReadAheadInputStream(InputStream source, int chunkSize, Executor executor) {
+    this.source = source;
+    this.chunkSize = chunkSize;
+    this.executor = executor;
+    this.next = readAhead(new byte[chunkSize]);
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (position == limit && !nextChunk()) {
+      return -1;
+    }
+    return current[position++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    if (len == 0) {
+      return 0;
+    }
+    if (position == limit && !nextChunk()) {
+      return -1;
+    }
+    int read = Math.min(len, limit - position);
+    System.arraycopy(current, position, b, off, read);
+    position += read;
+    return read;
+  }
+
+  @Override
+  public int available() {
+    return limit - position;
+  }
+
+  /** Wait for the chunk read ahead, and start reading the one after it into the spent buffer. */
+  private boolean nextChunk() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (next == null) {
+      return false;
+    }
+    Chunk chunk;
+    try {
+      chunk = next.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for read ahead");
+    } catch (ExecutionException e) {
+      next = null;
+      if (e.getCause() instanceof UncheckedIOException cause) {
+        throw cause.getCause();
+      }
+      throw new IOException("Failed to read ahead", e.getCause());
+    }
+    if (chunk.length() == 0) {
+      next = null;
+      return false;
+    }
+    byte[] spent = current.length == chunkSize ? current : new byte[chunkSize];
+    current = chunk.buffer();
+    position = 0;
+    limit = chunk.length();
+    // A short chunk means the source ended
+    next = limit < chunkSize ? null : readAhead(spent);
+    return true;
+  }
+
+  private CompletableFuture<Chunk> readAhead(byte[] buffer) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return new Chunk(buffer, IOUtils.read(source, buffer));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        },
+        executor);
+  }
+
+  /** Close the source, once the read ahead in progress, if any, is done with it. */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (next == null) {
+      IOUtils.closeQuietly(source);
+    } else {
+      next.whenComplete((chunk, failure) -> IOUtils.closeQuietly(source));
+      next = null;
+    }
+  }
+}
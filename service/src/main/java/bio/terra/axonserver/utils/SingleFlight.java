@@ -0,0 +1,87 @@
+package bio.terra.axonserver.utils;
+
+import com.google.common.base.Throwables;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent calls. The first call for a key runs, and calls for the same key
+ * made while it runs wait for it and get its result, or its exception, instead of running
+ * themselves. Once the call completes the key is free again, so results are never reused by later
+ * calls; that is left to a cache in front.
+ *
+ * <p>Keys must identify everything the result depends on, including the caller's credentials, so
+ * that a result is only shared between callers entitled to it.
+ *
+ * <p>Calls are counted by the singleFlight.calls counter, tagged with the name given here and
+ * whether the call was executed or coalesced into one already running. Coalesced calls are the
+ * calls saved.
+ *
+ * @param <K> key identifying identical calls
+ * @param <V> result of a call
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final Counter executed;
+  private final Counter coalesced;
+
+  /**
+   * @param name name of the calls, used to tag their metrics
+   * @param meterRegistry registry to count calls in
+   */
+  public SingleFlight(String name, MeterRegistry meterRegistry) {
+    this.executed = meterRegistry.counter("singleFlight.calls", "name", name, "result", "executed");
+    this.coalesced =
+        meterRegistry.counter("singleFlight.calls", "name", name, "result", "coalesced");
+  }
+
+  /**
+   * Make a call, or wait for the identical call in flight.
+   *
+   * @param key identifies the call
+   * @param call makes the call; it runs on the calling thread
+   * @return result of the call
+   */
+  public V call(K key, Supplier<V> call) {
+    CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+    if (existing != null) {
+      coalesced.increment();
+      return await(existing);
+    }
+    executed.increment();
+    try {
+      V value = call.get();
+      flight.complete(value);
+      return value;
+    } catch (RuntimeException | Error e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, flight);
+    }
+  }
+
+  /** Number of calls in flight, for tests. */
+  int inFlightCount() {
+    return inFlight.size();
+  }
+
+  private static <V> V await(CompletableFuture<V> flight) {
+    try {
+      return flight.get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for a call in flight", e);
+    }
+  }
+}
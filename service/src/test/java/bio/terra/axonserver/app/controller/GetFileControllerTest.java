@@ -0,0 +1,167 @@
+package bio.terra.axonserver.app.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import bio.terra.axonserver.service.exception.FileTooLargeException;
+import bio.terra.axonserver.service.file.FileContent;
+import bio.terra.axonserver.service.file.FileService;
+import bio.terra.axonserver.service.file.GcsFile;
+import bio.terra.axonserver.testutils.BaseUnitTest;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+// Responses are written by Spring rather than with non-blocking output, which MockMvc lacks.
+@TestPropertySource(properties = "axonserver.file.asyncStreamingEnabled=false")
+public class GetFileControllerTest extends BaseUnitTest {
+  @MockBean private FileService fileService;
+
+  @Autowired private MockMvc mockMvc;
+
+  private static final byte[] FILE = "file content".getBytes(StandardCharsets.UTF_8);
+  private static final long GENERATION = 7L;
+
+  private final UUID workspaceId = UUID.randomUUID();
+  private final UUID resourceId = UUID.randomUUID();
+  private final String path =
+      String.format(
+          "/api/workspaces/v1/%s/resources/%s/file/objects/data.txt", workspaceId, resourceId);
+  private final BlobInfo metadata = Mockito.mock(BlobInfo.class);
+
+  @BeforeEach
+  void setUp() {
+    Mockito.when(metadata.getBucket()).thenReturn("bucket");
+    Mockito.when(metadata.getName()).thenReturn("data.txt");
+    Mockito.when(metadata.getGeneration()).thenReturn(GENERATION);
+    Mockito.when(metadata.getSize()).thenReturn((long) FILE.length);
+    Mockito.when(metadata.getUpdateTime()).thenReturn(1700000000000L);
+    Mockito.when(
+            fileService.getGcsFile(
+                any(), eq(workspaceId), eq(resourceId), eq("data.txt"), anyBoolean()))
+        .thenReturn(new GcsFile(Mockito.mock(Storage.class), "petToken", metadata));
+    Mockito.when(fileService.readFile(any(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> new FileContent(new ByteArrayInputStream(FILE), metadata, List.of()));
+  }
+
+  @Test
+  void getFile_unconditionalUsesCachedMetadata() throws Exception {
+    mockMvc
+        .perform(get(path).header(HttpHeaders.AUTHORIZATION, "Bearer token"))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"7\""))
+        .andExpect(content().bytes(FILE));
+    Mockito.verify(fileService)
+        .getGcsFile(any(), eq(workspaceId), eq(resourceId), eq("data.txt"), eq(false));
+  }
+
+  @Test
+  void getFile_ifNoneMatchCurrent_notModified() throws Exception {
+    mockMvc
+        .perform(
+            get(path)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer token")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"7\""))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"7\""))
+        .andExpect(content().bytes(new byte[0]));
+    // The condition is decided against the object's current metadata, not cached metadata
+    Mockito.verify(fileService)
+        .getGcsFile(any(), eq(workspaceId), eq(resourceId), eq("data.txt"), eq(true));
+    Mockito.verify(fileService, Mockito.never()).readFile(any(), any(), any(), any());
+  }
+
+  @Test
+  void getFile_ifNoneMatchOutdated_ok() throws Exception {
+    mockMvc
+        .perform(
+            get(path)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer token")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"6\""))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"7\""))
+        .andExpect(content().bytes(FILE));
+  }
+
+  @Test
+  void getFile_ifModifiedSinceUpdate_notModified() throws Exception {
+    mockMvc
+        .perform(
+            get(path)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer token")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Tue, 14 Nov 2023 22:13:20 GMT"))
+        .andExpect(status().isNotModified());
+    Mockito.verify(fileService)
+        .getGcsFile(any(), eq(workspaceId), eq(resourceId), eq("data.txt"), eq(true));
+  }
+
+  @Test
+  void getFile_ifRangeMismatch_wholeFile() throws Exception {
+    mockMvc
+        .perform(
+            get(path)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer token")
+                .header(HttpHeaders.RANGE, "bytes=0-3")
+                .header(HttpHeaders.IF_RANGE, "\"6\""))
+        .andExpect(status().isOk())
+        .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, FILE.length))
+        .andExpect(content().bytes(FILE));
+    Mockito.verify(fileService).readFile(any(), any(), isNull(), eq(List.of()));
+    Mockito.verify(fileService)
+        .getGcsFile(any(), eq(workspaceId), eq(resourceId), eq("data.txt"), eq(true));
+  }
+
+  @Test
+  void getFile_conversionHasWeakETag() throws Exception {
+    mockMvc
+        .perform(
+            get(path)
+                .queryParam("convertTo", "html")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer token"))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "W/\"7-html\""));
+  }
+
+  @Test
+  void getFile_conversionIfNoneMatch_notModified() throws Exception {
+    mockMvc
+        .perform(
+            get(path)
+                .queryParam("convertTo", "html")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer token")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"7-html\""))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, "W/\"7-html\""));
+    Mockito.verify(fileService, Mockito.never()).readFile(any(), any(), any(), any());
+  }
+
+  @Test
+  void getFile_conversionTooLarge_payloadTooLarge() throws Exception {
+    Mockito.when(fileService.readFile(any(), any(), eq("html"), any()))
+        .thenThrow(new FileTooLargeException("File is too large to convert"));
+    mockMvc
+        .perform(
+            get(path)
+                .queryParam("convertTo", "html")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer token"))
+        .andExpect(status().isPayloadTooLarge());
+  }
+}
@@ -0,0 +1,115 @@
+package bio.terra.axonserver.service.calhoun;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.axonserver.app.configuration.BulkheadConfiguration;
+import bio.terra.axonserver.app.configuration.CalhounConfiguration;
+import bio.terra.axonserver.app.configuration.HttpClientConfiguration;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import javax.ws.rs.BadRequestException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Checks what Calhoun receives, against a local stand-in that records each request. */
+class CalhounServiceTest {
+
+  private static final byte[] CONVERTED = "<html>converted</html>".getBytes(StandardCharsets.UTF_8);
+
+  private HttpServer server;
+  private CalhounService calhounService;
+  private volatile int responseStatus = 200;
+  private volatile String requestPath;
+  private volatile Headers requestHeaders;
+  private volatile byte[] requestBody;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          try (exchange) {
+            requestPath = exchange.getRequestURI().getPath();
+            requestHeaders = exchange.getRequestHeaders();
+            requestBody = exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(responseStatus, CONVERTED.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+              out.write(CONVERTED);
+            }
+          }
+        });
+    server.start();
+    calhounService =
+        new CalhounService(
+            new CalhounConfiguration(
+                "http://localhost:" + server.getAddress().getPort(),
+                new HttpClientConfiguration(4, 60, 10000, 10000),
+                new BulkheadConfiguration(4, 4, 1000, 10)),
+            new SimpleMeterRegistry());
+  }
+
+  @AfterEach
+  void tearDown() {
+    calhounService.shutdown();
+    server.stop(0);
+  }
+
+  private static byte[] notebook(int size) {
+    byte[] notebook = new byte[size];
+    new Random(0).nextBytes(notebook);
+    return notebook;
+  }
+
+  @Test
+  void testConvertNotebookSendsTheNotebook() throws IOException {
+    byte[] notebook = notebook(300000);
+    try (InputStream converted =
+        calhounService.convertNotebook("token", new ByteArrayInputStream(notebook))) {
+      assertArrayEquals(CONVERTED, converted.readAllBytes());
+    }
+
+    assertEquals("/api/convert", requestPath);
+    assertArrayEquals(notebook, requestBody);
+    assertEquals("application/json", requestHeaders.getFirst("Content-Type"));
+    assertEquals("chunked", requestHeaders.getFirst("Transfer-Encoding"));
+    assertEquals("Bearer token", requestHeaders.getFirst("Authorization"));
+  }
+
+  @Test
+  void testConvertRmdSendsTheFile() throws IOException {
+    byte[] rmd = "# Title\n\nSome text\n".getBytes(StandardCharsets.UTF_8);
+    try (InputStream converted =
+        calhounService.convertRmd("token", new ByteArrayInputStream(rmd))) {
+      assertArrayEquals(CONVERTED, converted.readAllBytes());
+    }
+
+    assertEquals("/api/convert/rmd", requestPath);
+    assertArrayEquals(rmd, requestBody);
+    assertEquals("text/plain", requestHeaders.getFirst("Content-Type"));
+    assertEquals("chunked", requestHeaders.getFirst("Transfer-Encoding"));
+  }
+
+  @Test
+  void testFailedConversionThrows() {
+    responseStatus = 500;
+    byte[] notebook = notebook(100);
+
+    assertThrows(
+        BadRequestException.class,
+        () -> calhounService.convertNotebook("token", new ByteArrayInputStream(notebook)));
+  }
+}
@@ -0,0 +1,254 @@
+package bio.terra.axonserver.service.convert;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.axonserver.app.configuration.ConvertConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class ConversionCacheTest {
+
+  @TempDir Path directory;
+
+  private ConversionCache newCache(long memoryBytes, long memoryEntryBytes, long diskBytes)
+      throws IOException {
+    return newCache(memoryBytes, memoryEntryBytes, diskBytes, 10000);
+  }
+
+  private ConversionCache newCache(
+      long memoryBytes, long memoryEntryBytes, long diskBytes, int sharedConversionWaitMillis)
+      throws IOException {
+    return new ConversionCache(
+        new ConvertConfiguration(
+            DataSize.ofBytes(memoryBytes),
+            DataSize.ofBytes(memoryEntryBytes),
+            directory.toString(),
+            DataSize.ofBytes(diskBytes),
+            sharedConversionWaitMillis),
+        new SimpleMeterRegistry());
+  }
+
+  private static ConversionKey key(long generation) {
+    return new ConversionKey("bucket", "notebook.ipynb", generation, "ipynb", "html");
+  }
+
+  private static InputStream content(String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(InputStream in) throws IOException {
+    try (in) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private long countCacheFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  @Test
+  void testRepeatedGetConvertsOnce() throws IOException {
+    ConversionCache cache = newCache(1024, 1024, 1024);
+    AtomicInteger conversions = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      String converted =
+          read(
+              cache.get(
+                  key(1),
+                  () -> {
+                    conversions.incrementAndGet();
+                    return content("<html/>");
+                  }));
+      assertEquals("<html/>", converted);
+    }
+    assertEquals(1, conversions.get());
+  }
+
+  @Test
+  void testGenerationsAreCachedSeparately() throws IOException {
+    ConversionCache cache = newCache(1024, 1024, 1024);
+    assertEquals("one", read(cache.get(key(1), () -> content("one"))));
+    assertEquals("two", read(cache.get(key(2), () -> content("two"))));
+    assertEquals("one", read(cache.get(key(1), () -> content("unexpected"))));
+  }
+
+  @Test
+  void testSmallConversionServedFromMemory() throws IOException {
+    ConversionCache cache = newCache(1024, 1024, 1024);
+    String converted = "x".repeat(100);
+    assertEquals(converted, read(cache.get(key(1), () -> content(converted))));
+    // Served from memory, so it does not need its cache file
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.toList()) {
+        Files.delete(file);
+      }
+    }
+    assertEquals(converted, read(cache.get(key(1), () -> content("unexpected"))));
+  }
+
+  @Test
+  void testLargeConversionServedFromDisk() throws IOException {
+    ConversionCache cache = newCache(1024, 4, 1024);
+    assertEquals(
+        "larger than memory", read(cache.get(key(1), () -> content("larger than memory"))));
+    assertEquals("larger than memory", read(cache.get(key(1), () -> content("unexpected"))));
+    assertEquals(1, countCacheFiles());
+  }
+
+  @Test
+  void testDiskEvictionDeletesFiles() throws IOException {
+    ConversionCache cache = newCache(0, 0, 10);
+    read(cache.get(key(1), () -> content("123456")));
+    read(cache.get(key(2), () -> content("abcdef")));
+    assertEquals(1, countCacheFiles());
+    assertEquals("new", read(cache.get(key(1), () -> content("new"))));
+  }
+
+  @Test
+  void testShutdownDeletesFiles() throws IOException {
+    ConversionCache cache = newCache(0, 0, 1024);
+    read(cache.get(key(1), () -> content("converted")));
+    cache.shutdown();
+    assertEquals(0, countCacheFiles());
+  }
+
+  @Test
+  void testConversionLargerThanDiskIsStreamedButNotCached() throws IOException {
+    ConversionCache cache = newCache(1024, 1024, 4);
+    assertEquals("too large", read(cache.get(key(1), () -> content("too large"))));
+    assertEquals(0, countCacheFiles());
+    assertEquals("new", read(cache.get(key(1), () -> content("new"))));
+  }
+
+  @Test
+  void testConversionLargerThanDiskIsStreamedInFull() throws IOException {
+    ConversionCache cache = newCache(1024, 1024, 4);
+    String large = "x".repeat(200 * 1024);
+    assertEquals(large, read(cache.get(key(1), () -> content(large))));
+    assertEquals(0, countCacheFiles());
+  }
+
+  @Test
+  void testPartiallyReadConversionIsCached() throws IOException {
+    ConversionCache cache = newCache(1024, 1024, 1024);
+    try (InputStream in = cache.get(key(1), () -> content("<html/>"))) {
+      assertEquals('<', in.read());
+    }
+    assertEquals("<html/>", read(cache.get(key(1), () -> content("unexpected"))));
+  }
+
+  @Test
+  void testUnreadConversionDoesNotHoldUpOtherRequests() throws IOException {
+    ConversionCache cache = newCache(1024, 1024, 1024);
+    InputStream unread = cache.get(key(1), () -> content("<html/>"));
+    try {
+      assertEquals("<html/>", read(cache.get(key(1), () -> content("unexpected"))));
+    } finally {
+      unread.close();
+    }
+  }
+
+  @Test
+  void testFailedConversionIsNotCached() throws IOException {
+    ConversionCache cache = newCache(1024, 1024, 1024);
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            cache.get(
+                key(1),
+                () -> {
+                  throw new IllegalStateException("conversion failed");
+                }));
+    assertEquals("<html/>", read(cache.get(key(1), () -> content("<html/>"))));
+  }
+
+  @Test
+  void testConcurrentMissesShareOneConversion() throws Exception {
+    ConversionCache cache = newCache(1024, 1024, 1024);
+    AtomicInteger conversions = new AtomicInteger();
+    CountDownLatch conversionStarted = new CountDownLatch(1);
+    CountDownLatch finishConversion = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        results.add(
+            executor.submit(
+                () ->
+                    read(
+                        cache.get(
+                            key(1),
+                            () -> {
+                              conversions.incrementAndGet();
+                              conversionStarted.countDown();
+                              try {
+                                finishConversion.await();
+                              } catch (InterruptedException e) {
+                                throw new IllegalStateException(e);
+                              }
+                              return content("<html/>");
+                            }))));
+      }
+      conversionStarted.await();
+      // Give the other requests time to join the conversion in flight
+      Thread.sleep(100);
+      finishConversion.countDown();
+      for (Future<String> result : results) {
+        assertEquals("<html/>", result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, conversions.get());
+  }
+
+  @Test
+  void testSlowConversionInFlightIsNotWaitedForForever() throws Exception {
+    ConversionCache cache = newCache(1024, 1024, 1024, 50);
+    CountDownLatch conversionStarted = new CountDownLatch(1);
+    CountDownLatch finishConversion = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> slow =
+          executor.submit(
+              () ->
+                  read(
+                      cache.get(
+                          key(1),
+                          () -> {
+                            conversionStarted.countDown();
+                            try {
+                              finishConversion.await();
+                            } catch (InterruptedException e) {
+                              throw new IllegalStateException(e);
+                            }
+                            return content("slow");
+                          })));
+      conversionStarted.await();
+      assertEquals("fast", read(cache.get(key(1), () -> content("fast"))));
+      finishConversion.countDown();
+      assertEquals("slow", slow.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
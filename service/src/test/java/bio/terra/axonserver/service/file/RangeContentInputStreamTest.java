@@ -0,0 +1,56 @@
+package bio.terra.axonserver.service.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.axonserver.utils.ByteRange;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RangeContentInputStreamTest {
+
+  private static final byte[] OBJECT =
+      "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII);
+
+  private static InputStream spanStream(ByteRange span) {
+    return new ByteArrayInputStream(
+        Arrays.copyOfRange(OBJECT, (int) span.start(), (int) span.end() + 1));
+  }
+
+  private static String read(List<ByteRange> ranges, List<ByteRange> spans) throws IOException {
+    List<InputStream> spanStreams =
+        spans.stream().map(RangeContentInputStreamTest::spanStream).toList();
+    try (InputStream in = new RangeContentInputStream(ranges, spans, spanStreams)) {
+      return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+    }
+  }
+
+  @Test
+  void testRangesFromOneSpan() throws IOException {
+    List<ByteRange> ranges = List.of(new ByteRange(1, 2), new ByteRange(5, 7));
+    assertEquals("12567", read(ranges, List.of(new ByteRange(1, 7))));
+  }
+
+  @Test
+  void testRangesFromSeveralSpans() throws IOException {
+    List<ByteRange> ranges =
+        List.of(new ByteRange(0, 1), new ByteRange(4, 4), new ByteRange(20, 22));
+    List<ByteRange> spans = List.of(new ByteRange(0, 4), new ByteRange(20, 22));
+    assertEquals("014klm", read(ranges, spans));
+  }
+
+  @Test
+  void testShortSpanFails() {
+    List<ByteRange> ranges = List.of(new ByteRange(0, 9));
+    List<ByteRange> spans = List.of(new ByteRange(0, 9));
+    InputStream shortStream = new ByteArrayInputStream(Arrays.copyOfRange(OBJECT, 0, 5));
+    InputStream in = new RangeContentInputStream(ranges, spans, List.of(shortStream));
+    assertThrows(EOFException.class, in::readAllBytes);
+  }
+}
@@ -0,0 +1,198 @@
+package bio.terra.axonserver.service.file;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import bio.terra.axonserver.app.configuration.BulkheadConfiguration;
+import bio.terra.axonserver.testutils.FakeReadChannel;
+import bio.terra.axonserver.utils.Bulkhead;
+import bio.terra.common.exception.NotFoundException;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SlicedDownloaderTest {
+
+  private static final BlobId BLOB_ID = BlobId.of("bucket", "object", 1L);
+
+  private SlicedDownloader downloader;
+
+  @AfterEach
+  void tearDown() {
+    if (downloader != null) {
+      downloader.shutdown();
+    }
+  }
+
+  private static SlicedDownloader newDownloader(
+      int sliceSize, int slicesPerDownload, int maxBufferedSlices, int threads) {
+    return new SlicedDownloader(
+        sliceSize,
+        slicesPerDownload,
+        maxBufferedSlices,
+        threads,
+        new Bulkhead("gcs", new BulkheadConfiguration(8, 8, 1000, 5), new SimpleMeterRegistry()));
+  }
+
+  private static byte[] bytes(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) i;
+    }
+    return bytes;
+  }
+
+  /** A Storage client serving one object, counting the reads it opens. */
+  private static Storage storage(byte[] content, AtomicInteger reads) {
+    Storage gcs = mock(Storage.class);
+    when(gcs.reader(any(BlobId.class)))
+        .thenAnswer(
+            invocation -> {
+              reads.incrementAndGet();
+              return new FakeReadChannel(content);
+            });
+    return gcs;
+  }
+
+  @Test
+  void testReadsWholeObjectInSlices() throws IOException {
+    downloader = newDownloader(4, 3, 8, 2);
+    for (int length : new int[] {1, 4, 5, 8, 10, 37}) {
+      byte[] content = bytes(length);
+      AtomicInteger reads = new AtomicInteger();
+      try (InputStream in = downloader.tryOpen(storage(content, reads), BLOB_ID, length)) {
+        assertNotNull(in);
+        assertArrayEquals(content, in.readAllBytes());
+        assertEquals(-1, in.read());
+      }
+      assertEquals((length + 3) / 4, reads.get());
+    }
+  }
+
+  /** Serves the bytes before an offset at once, and the bytes after it once the gate opens. */
+  private static class GatedReadChannel extends FakeReadChannel {
+
+    private final long gateOffset;
+    private final CountDownLatch gate;
+    private long position;
+
+    GatedReadChannel(byte[] content, long gateOffset, CountDownLatch gate) {
+      super(content);
+      this.gateOffset = gateOffset;
+      this.gate = gate;
+    }
+
+    @Override
+    public void seek(long position) {
+      super.seek(position);
+      this.position = position;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+      if (position >= gateOffset) {
+        try {
+          gate.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return -1;
+        }
+      } else if (dst.remaining() > gateOffset - position) {
+        dst = dst.slice(dst.position(), (int) (gateOffset - position));
+      }
+      int read = super.read(dst);
+      position += Math.max(read, 0);
+      return read;
+    }
+  }
+
+  @Test
+  void testFirstBytesArriveBeforeFirstSliceIsRead() throws IOException {
+    int sliceSize = 1024 * 1024;
+    downloader = newDownloader(sliceSize, 3, 8, 2);
+    byte[] content = bytes(3 * sliceSize);
+    // Only the first read buffer's worth of the first slice is available until the gate opens
+    int available = 64 * 1024;
+    CountDownLatch gate = new CountDownLatch(1);
+    Storage gcs = mock(Storage.class);
+    when(gcs.reader(any(BlobId.class)))
+        .thenAnswer(invocation -> new GatedReadChannel(content, available, gate));
+
+    InputStream in =
+        assertTimeoutPreemptively(
+            Duration.ofSeconds(10), () -> downloader.tryOpen(gcs, BLOB_ID, content.length));
+    try (in) {
+      assertNotNull(in);
+      byte[] first =
+          assertTimeoutPreemptively(Duration.ofSeconds(10), () -> in.readNBytes(available));
+      assertArrayEquals(Arrays.copyOf(content, available), first);
+
+      gate.countDown();
+      assertArrayEquals(Arrays.copyOfRange(content, available, content.length), in.readAllBytes());
+    } finally {
+      gate.countDown();
+    }
+  }
+
+  @Test
+  void testMissingObjectFailsOnOpen() {
+    downloader = newDownloader(4, 3, 8, 2);
+    Storage gcs = mock(Storage.class);
+    when(gcs.reader(any(BlobId.class))).thenThrow(new StorageException(404, "Not found"));
+
+    assertThrows(NotFoundException.class, () -> downloader.tryOpen(gcs, BLOB_ID, 10));
+    // The buffers of the failed download are free again
+    for (int i = 0; i < 8; i++) {
+      assertThrows(NotFoundException.class, () -> downloader.tryOpen(gcs, BLOB_ID, 10));
+    }
+  }
+
+  @Test
+  void testDownloadsShareBuffers() throws IOException {
+    downloader = newDownloader(4, 2, 4, 2);
+    byte[] content = bytes(40);
+    Storage gcs = storage(content, new AtomicInteger());
+
+    try (InputStream first = downloader.tryOpen(gcs, BLOB_ID, content.length);
+        InputStream second = downloader.tryOpen(gcs, BLOB_ID, content.length)) {
+      assertNotNull(first);
+      assertNotNull(second);
+      // Every buffer is taken, so a third download is not started
+      assertNull(downloader.tryOpen(gcs, BLOB_ID, content.length));
+
+      // Each download keeps reading with the buffer it has
+      byte[] firstContent = new byte[content.length];
+      byte[] secondContent = new byte[content.length];
+      for (int i = 0; i < content.length; i++) {
+        firstContent[i] = (byte) first.read();
+        secondContent[i] = (byte) second.read();
+      }
+      assertArrayEquals(content, firstContent);
+      assertArrayEquals(content, secondContent);
+    }
+
+    // Closing the downloads frees their buffers, even when closed part way
+    for (int i = 0; i < 4; i++) {
+      InputStream in = downloader.tryOpen(gcs, BLOB_ID, content.length);
+      assertNotNull(in);
+      in.close();
+    }
+  }
+}
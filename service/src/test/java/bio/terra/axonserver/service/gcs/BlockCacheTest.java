@@ -0,0 +1,138 @@
+package bio.terra.axonserver.service.gcs;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import bio.terra.axonserver.app.configuration.BlockCacheConfiguration;
+import bio.terra.axonserver.app.configuration.BulkheadConfiguration;
+import bio.terra.axonserver.app.configuration.GcsConfiguration;
+import bio.terra.axonserver.testutils.FakeReadChannel;
+import bio.terra.axonserver.utils.ByteRange;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+class BlockCacheTest {
+
+  private static final BlobId BLOB_ID = BlobId.of("bucket", "object", 1L);
+  private static final byte[] CONTENT = bytes(22);
+
+  private final AtomicInteger reads = new AtomicInteger();
+  private final Storage gcs = storage(CONTENT, reads);
+
+  private static byte[] bytes(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) i;
+    }
+    return bytes;
+  }
+
+  /** A Storage client serving one object, counting the reads it opens. */
+  private static Storage storage(byte[] content, AtomicInteger reads) {
+    Storage gcs = mock(Storage.class);
+    when(gcs.reader(any(BlobId.class)))
+        .thenAnswer(
+            invocation -> {
+              reads.incrementAndGet();
+              return new FakeReadChannel(content);
+            });
+    return gcs;
+  }
+
+  /** A cache of 4 byte blocks, holding at most 4 blocks. */
+  private static BlockCache blockCache(boolean enabled) {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    GcsConfiguration gcsConfig =
+        new GcsConfiguration(null, 1, 0, 0, 1, 1, 1, 1, new BulkheadConfiguration(1, 0, 0, 1));
+    return new BlockCache(
+        new BlockCacheConfiguration(
+            enabled, DataSize.ofBytes(4), DataSize.ofBytes(16), DataSize.ofBytes(12)),
+        new GcsBulkhead(gcsConfig, meterRegistry),
+        meterRegistry);
+  }
+
+  private byte[] read(BlockCache blockCache, BlobId blobId, long start, long end)
+      throws IOException {
+    try (InputStream in = blockCache.read(gcs, blobId, CONTENT.length, new ByteRange(start, end))) {
+      return in.readAllBytes();
+    }
+  }
+
+  @Test
+  void testReadsRanges() throws IOException {
+    for (int start = 0; start < CONTENT.length; start++) {
+      for (int end = start; end < Math.min(CONTENT.length, start + 12); end++) {
+        assertArrayEquals(
+            Arrays.copyOfRange(CONTENT, start, end + 1),
+            read(blockCache(true), BLOB_ID, start, end),
+            "range " + start + "-" + end);
+      }
+    }
+  }
+
+  @Test
+  void testReadsOnlyMissingBlocks() throws IOException {
+    BlockCache blockCache = blockCache(true);
+    read(blockCache, BLOB_ID, 5, 6);
+    assertEquals(1, reads.get());
+
+    // Blocks 0 and 2 are read around cached block 1, each with its own read
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, 2, 11), read(blockCache, BLOB_ID, 2, 10));
+    assertEquals(3, reads.get());
+
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, 0, 12), read(blockCache, BLOB_ID, 0, 11));
+    assertEquals(3, reads.get());
+
+    // Other generations of the object are cached separately
+    read(blockCache, BlobId.of("bucket", "object", 2L), 0, 11);
+    assertEquals(4, reads.get());
+  }
+
+  @Test
+  void testReadsShortLastBlock() throws IOException {
+    BlockCache blockCache = blockCache(true);
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, 17, 22), read(blockCache, BLOB_ID, 17, 21));
+    assertArrayEquals(Arrays.copyOfRange(CONTENT, 20, 22), read(blockCache, BLOB_ID, 20, 21));
+    assertEquals(1, reads.get());
+  }
+
+  @Test
+  void testEvictsLeastRecentlyUsedBlocks() throws IOException {
+    BlockCache blockCache = blockCache(true);
+    read(blockCache, BLOB_ID, 0, 7);
+    read(blockCache, BLOB_ID, 8, 15);
+    read(blockCache, BLOB_ID, 0, 3);
+    assertEquals(2, reads.get());
+
+    // Holding block 4 evicts block 1, the least recently used
+    read(blockCache, BLOB_ID, 16, 19);
+    read(blockCache, BLOB_ID, 0, 3);
+    read(blockCache, BLOB_ID, 8, 19);
+    assertEquals(3, reads.get());
+    read(blockCache, BLOB_ID, 4, 7);
+    assertEquals(4, reads.get());
+  }
+
+  @Test
+  void testIsCacheable() {
+    BlockCache blockCache = blockCache(true);
+    assertTrue(blockCache.isCacheable(BLOB_ID, 1));
+    assertTrue(blockCache.isCacheable(BLOB_ID, 12));
+    assertFalse(blockCache.isCacheable(BLOB_ID, 0));
+    assertFalse(blockCache.isCacheable(BLOB_ID, 13));
+    assertFalse(blockCache.isCacheable(BlobId.of("bucket", "object"), 1));
+    assertFalse(blockCache(false).isCacheable(BLOB_ID, 1));
+  }
+}
@@ -0,0 +1,122 @@
+package bio.terra.axonserver.service.iam;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import bio.terra.axonserver.app.configuration.BulkheadConfiguration;
+import bio.terra.axonserver.app.configuration.HttpClientConfiguration;
+import bio.terra.axonserver.app.configuration.SamConfiguration;
+import bio.terra.common.iam.BearerToken;
+import com.google.common.base.Ticker;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Checks when pet tokens are fetched again, against a local stand-in for Sam. */
+class SamServiceTest {
+
+  private static final BearerToken USER = new BearerToken("user-token");
+
+  private final AtomicLong nowNanos = new AtomicLong();
+  private final AtomicInteger tokenCalls = new AtomicInteger();
+  private volatile long samCallSeconds;
+  private HttpServer server;
+  private SamService samService;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/api/google/v1/user/petServiceAccount/",
+        exchange -> {
+          try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            advance(samCallSeconds);
+            byte[] body =
+                ("\"pet-token-" + tokenCalls.incrementAndGet() + "\"")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+              out.write(body);
+            }
+          }
+        });
+    server.start();
+    Ticker ticker =
+        new Ticker() {
+          @Override
+          public long read() {
+            return nowNanos.get();
+          }
+        };
+    // Tokens last an hour less a 15 minute margin; background refresh is left out of the way
+    samService =
+        new SamService(
+            new SamConfiguration(
+                "http://localhost:" + server.getAddress().getPort(),
+                "resource",
+                3600,
+                900,
+                3600,
+                100,
+                new HttpClientConfiguration(4, 60, 10000, 10000),
+                new BulkheadConfiguration(4, 4, 1000, 10)),
+            new SimpleMeterRegistry(),
+            ticker);
+  }
+
+  @AfterEach
+  void tearDown() {
+    samService.shutdown();
+    server.stop(0);
+  }
+
+  private void advance(long seconds) {
+    nowNanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+
+  @Test
+  void testPetTokenReusedUntilLifetimeLessMargin() {
+    assertEquals("pet-token-1", samService.getPetAccessToken("project", USER));
+    advance(2699);
+    assertEquals("pet-token-1", samService.getPetAccessToken("project", USER));
+    assertEquals(1, tokenCalls.get());
+
+    advance(1);
+    assertEquals("pet-token-2", samService.getPetAccessToken("project", USER));
+    assertEquals(2, tokenCalls.get());
+  }
+
+  @Test
+  void testSlowSamCallCountsTowardsExpiry() {
+    // The token was cached 10 minutes after Sam was asked for it, so it is not served for the
+    // full 45 minutes after that
+    samCallSeconds = 600;
+    assertEquals("pet-token-1", samService.getPetAccessToken("project", USER));
+    samCallSeconds = 0;
+    advance(2099);
+    assertEquals("pet-token-1", samService.getPetAccessToken("project", USER));
+
+    advance(1);
+    assertEquals("pet-token-2", samService.getPetAccessToken("project", USER));
+    assertEquals(2, tokenCalls.get());
+  }
+
+  @Test
+  void testPetTokensCachedPerProject() {
+    assertEquals("pet-token-1", samService.getPetAccessToken("project-1", USER));
+    assertEquals("pet-token-2", samService.getPetAccessToken("project-2", USER));
+    assertEquals("pet-token-1", samService.getPetAccessToken("project-1", USER));
+    assertEquals(2, tokenCalls.get());
+  }
+}
@@ -0,0 +1,64 @@
+package bio.terra.axonserver.testutils;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import java.nio.ByteBuffer;
+
+/** Serves a byte array, honoring seek and limit as the GCS read channel does. */
+public class FakeReadChannel implements ReadChannel {
+
+  private final byte[] content;
+  private long position;
+  private long limit = Long.MAX_VALUE;
+  private boolean open = true;
+
+  public FakeReadChannel(byte[] content) {
+    this.content = content;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) {
+    long end = Math.min(content.length, limit);
+    if (position >= end) {
+      return -1;
+    }
+    int read = (int) Math.min(dst.remaining(), end - position);
+    dst.put(content, (int) position, read);
+    position += read;
+    return read;
+  }
+
+  @Override
+  public void seek(long position) {
+    this.position = position;
+  }
+
+  @Override
+  public ReadChannel limit(long limit) {
+    this.limit = limit;
+    return this;
+  }
+
+  @Override
+  public long limit() {
+    return limit;
+  }
+
+  @Override
+  public void setChunkSize(int chunkSize) {}
+
+  @Override
+  public RestorableState<ReadChannel> capture() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+  }
+}
@@ -0,0 +1,141 @@
+package bio.terra.axonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.axonserver.app.configuration.BulkheadConfiguration;
+import bio.terra.axonserver.service.exception.DownstreamSaturatedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+class BulkheadTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private Bulkhead bulkhead(int maxConcurrentCalls, int maxQueuedCalls, int maxWaitMillis) {
+    return new Bulkhead(
+        "test",
+        new BulkheadConfiguration(maxConcurrentCalls, maxQueuedCalls, maxWaitMillis, 7),
+        meterRegistry);
+  }
+
+  private double gauge(String name) {
+    return meterRegistry.get(name).tag("downstream", "test").gauge().value();
+  }
+
+  private double rejected(String reason) {
+    return meterRegistry
+        .get("bulkhead.rejected")
+        .tags("downstream", "test", "reason", reason)
+        .counter()
+        .count();
+  }
+
+  /** Start a call that holds its permit until released, and wait until it is in flight. */
+  private Future<String> startBlockedCall(Bulkhead bulkhead, CountDownLatch release)
+      throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    Future<String> result =
+        executor.submit(
+            () ->
+                bulkhead.call(
+                    () -> {
+                      started.countDown();
+                      release.await();
+                      return "blocked";
+                    }));
+    started.await();
+    return result;
+  }
+
+  @Test
+  void testCallsUnderTheLimitRun() throws Exception {
+    Bulkhead bulkhead = bulkhead(2, 0, 0);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<String> blocked = startBlockedCall(bulkhead, release);
+
+    assertEquals("value", bulkhead.call(() -> "value"));
+    assertEquals(1, gauge("bulkhead.active"));
+    assertEquals(2, gauge("bulkhead.limit"));
+    release.countDown();
+    assertEquals("blocked", blocked.get());
+    assertEquals(0, gauge("bulkhead.active"));
+  }
+
+  @Test
+  void testCallOverTheLimitWithNoQueueIsRejected() throws Exception {
+    Bulkhead bulkhead = bulkhead(1, 0, 1000);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<String> blocked = startBlockedCall(bulkhead, release);
+
+    DownstreamSaturatedException e =
+        assertThrows(DownstreamSaturatedException.class, () -> bulkhead.call(() -> "value"));
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+    assertEquals(7, e.getRetryAfterSeconds());
+    assertEquals(1, rejected("queueFull"));
+    release.countDown();
+    blocked.get();
+  }
+
+  @Test
+  void testQueuedCallRunsOnceACallFinishes() throws Exception {
+    Bulkhead bulkhead = bulkhead(1, 1, 10000);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<String> blocked = startBlockedCall(bulkhead, release);
+    Future<String> queued = executor.submit(() -> bulkhead.call(() -> "queued"));
+    while (gauge("bulkhead.queued") < 1) {
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
+
+    // The queue is full, so another call is rejected at once
+    assertThrows(DownstreamSaturatedException.class, () -> bulkhead.call(() -> "value"));
+    release.countDown();
+    assertEquals("blocked", blocked.get());
+    assertEquals("queued", queued.get());
+    assertEquals(0, gauge("bulkhead.queued"));
+  }
+
+  @Test
+  void testQueuedCallIsRejectedAfterTheWait() throws Exception {
+    Bulkhead bulkhead = bulkhead(1, 1, 10);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<String> blocked = startBlockedCall(bulkhead, release);
+
+    assertThrows(DownstreamSaturatedException.class, () -> bulkhead.call(() -> "value"));
+    assertEquals(1, rejected("timeout"));
+    assertEquals(0, gauge("bulkhead.queued"));
+    release.countDown();
+    blocked.get();
+  }
+
+  @Test
+  void testFailedCallReleasesItsPermit() {
+    Bulkhead bulkhead = bulkhead(1, 0, 0);
+    IllegalStateException failure = new IllegalStateException("failed");
+
+    assertEquals(
+        failure,
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                bulkhead.call(
+                    () -> {
+                      throw failure;
+                    })));
+    assertEquals("value", bulkhead.call(() -> "value"));
+    assertEquals(0, gauge("bulkhead.active"));
+  }
+}
@@ -0,0 +1,71 @@
+package bio.terra.axonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpRange;
+
+class ByteRangeTest {
+
+  private static Optional<ByteRange> resolve(String rangeHeader, long objectSize) {
+    return ByteRange.resolve(HttpRange.parseRanges(rangeHeader).get(0), objectSize);
+  }
+
+  @Test
+  void testBoundedRange() {
+    ByteRange range = resolve("bytes=2-4", 10).orElseThrow();
+    assertEquals(new ByteRange(2, 4), range);
+    assertEquals(3, range.length());
+    assertEquals("bytes 2-4/10", range.toContentRange(10));
+  }
+
+  @Test
+  void testOpenEndedRange() {
+    assertEquals(new ByteRange(7, 9), resolve("bytes=7-", 10).orElseThrow());
+  }
+
+  @Test
+  void testEndPastObjectIsClamped() {
+    assertEquals(new ByteRange(5, 9), resolve("bytes=5-100", 10).orElseThrow());
+  }
+
+  @Test
+  void testSuffixRange() {
+    assertEquals(new ByteRange(7, 9), resolve("bytes=-3", 10).orElseThrow());
+    assertEquals(new ByteRange(0, 9), resolve("bytes=-100", 10).orElseThrow());
+  }
+
+  @Test
+  void testUnsatisfiableRanges() {
+    assertTrue(resolve("bytes=10-", 10).isEmpty());
+    assertTrue(resolve("bytes=20-30", 10).isEmpty());
+    assertTrue(resolve("bytes=-0", 10).isEmpty());
+    assertTrue(resolve("bytes=0-", 0).isEmpty());
+    assertTrue(resolve("bytes=-5", 0).isEmpty());
+  }
+
+  @Test
+  void testCoalesceMergesOverlappingAndAdjacentRanges() {
+    List<ByteRange> ranges =
+        List.of(
+            new ByteRange(20, 29), new ByteRange(0, 4), new ByteRange(5, 9), new ByteRange(3, 6));
+    assertEquals(
+        List.of(new ByteRange(0, 9), new ByteRange(20, 29)), ByteRange.coalesce(ranges, 0));
+  }
+
+  @Test
+  void testCoalesceMergesRangesWithinGap() {
+    List<ByteRange> ranges = List.of(new ByteRange(0, 9), new ByteRange(15, 19));
+    assertEquals(ranges, ByteRange.coalesce(ranges, 4));
+    assertEquals(List.of(new ByteRange(0, 19)), ByteRange.coalesce(ranges, 5));
+  }
+
+  @Test
+  void testCoalesceKeepsContainedRange() {
+    List<ByteRange> ranges = List.of(new ByteRange(0, 99), new ByteRange(10, 20));
+    assertEquals(List.of(new ByteRange(0, 99)), ByteRange.coalesce(ranges, 0));
+  }
+}
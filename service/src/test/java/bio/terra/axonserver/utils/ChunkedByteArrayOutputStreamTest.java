@@ -0,0 +1,87 @@
+package bio.terra.axonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ChunkedByteArrayOutputStreamTest {
+
+  private static byte[] bytes(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) i;
+    }
+    return bytes;
+  }
+
+  @Test
+  void testWritesSpanChunks() throws IOException {
+    ChunkedByteArrayOutputStream out = new ChunkedByteArrayOutputStream(new ChunkPool(4, 4), 100);
+    byte[] content = bytes(10);
+    out.write(content[0]);
+    out.write(content, 1, 8);
+    out.write(content[9]);
+
+    assertEquals(10, out.size());
+    assertEquals(12, out.capacity());
+    assertArrayEquals(content, out.toInputStream().readAllBytes());
+    ByteArrayOutputStream copy = new ByteArrayOutputStream();
+    out.writeTo(copy);
+    assertArrayEquals(content, copy.toByteArray());
+    ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+    assertEquals(10, out.toInputStream().transferTo(transferred));
+    assertArrayEquals(content, transferred.toByteArray());
+  }
+
+  @Test
+  void testByteBuffersCoverContent() {
+    ChunkedByteArrayOutputStream out = new ChunkedByteArrayOutputStream(new ChunkPool(4, 4), 100);
+    out.write(bytes(10), 0, 10);
+
+    List<ByteBuffer> buffers = out.toByteBuffers();
+    assertEquals(List.of(4, 4, 2), buffers.stream().map(ByteBuffer::remaining).toList());
+    assertEquals(9, buffers.get(2).get(1));
+  }
+
+  @Test
+  void testSingleByteReads() throws IOException {
+    ChunkedByteArrayOutputStream out = new ChunkedByteArrayOutputStream(new ChunkPool(2, 4), 100);
+    out.write(bytes(3), 0, 3);
+
+    InputStream in = out.toInputStream();
+    assertEquals(0, in.read());
+    assertEquals(1, in.read());
+    assertEquals(2, in.read());
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  void testLimitIsEnforced() {
+    ChunkedByteArrayOutputStream out = new ChunkedByteArrayOutputStream(new ChunkPool(4, 4), 5);
+    out.write(bytes(5), 0, 5);
+    assertThrows(IndexOutOfBoundsException.class, () -> out.write(1));
+    assertThrows(IndexOutOfBoundsException.class, () -> out.write(bytes(1), 0, 1));
+    assertEquals(5, out.size());
+  }
+
+  @Test
+  void testReleasedChunksAreReused() {
+    ChunkPool pool = new ChunkPool(4, 4);
+    ChunkedByteArrayOutputStream out = new ChunkedByteArrayOutputStream(pool, 100);
+    byte[] chunk = pool.acquire();
+    pool.release(chunk);
+    out.write(bytes(4), 0, 4);
+    out.release();
+
+    assertEquals(0, out.size());
+    assertSame(chunk, pool.acquire());
+  }
+}
@@ -0,0 +1,45 @@
+package bio.terra.axonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class DownstreamMetricsTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private long count(String outcome) {
+    return meterRegistry
+        .timer(
+            DownstreamMetrics.TIMER_NAME,
+            "downstream",
+            "wsm",
+            "operation",
+            "getResource",
+            "outcome",
+            outcome)
+        .count();
+  }
+
+  @Test
+  void testTimesCallsByOutcome() {
+    assertEquals(
+        "value", DownstreamMetrics.time(meterRegistry, "wsm", "getResource", () -> "value"));
+    assertThrows(
+        IOException.class,
+        () ->
+            DownstreamMetrics.time(
+                meterRegistry,
+                "wsm",
+                "getResource",
+                () -> {
+                  throw new IOException("failed");
+                }));
+
+    assertEquals(1, count("success"));
+    assertEquals(1, count("failure"));
+  }
+}
@@ -0,0 +1,133 @@
+package bio.terra.axonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.axonserver.app.configuration.HttpClientConfiguration;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.HttpHeaders;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class HttpClientUtilsTest {
+
+  private static final HttpClientConfiguration CONFIG =
+      new HttpClientConfiguration(4, 60, 5000, 5000);
+
+  private HttpServer server;
+  private String baseUrl;
+  private volatile String authorization;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          try (exchange) {
+            authorization = exchange.getRequestHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+            exchange.sendResponseHeaders(204, -1);
+          }
+        });
+    server.start();
+    baseUrl = "http://localhost:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop(0);
+  }
+
+  private void getWithJersey(Client client) {
+    client.target(baseUrl).request().get().close();
+  }
+
+  private void getWithOkHttp(OkHttpClient client) throws IOException {
+    try (Response response = client.newCall(new Request.Builder().url(baseUrl).build()).execute()) {
+      assertEquals(204, response.code());
+    }
+  }
+
+  @Test
+  void testJerseyClientSendsTheCallsAccessToken() {
+    Client client = HttpClientUtils.buildPooledJerseyClient(ClientBuilder.newClient(), CONFIG);
+    try {
+      AccessTokenContext.call(
+          "first",
+          () -> {
+            getWithJersey(client);
+            return null;
+          });
+      assertEquals("Bearer first", authorization);
+      AccessTokenContext.call(
+          "second",
+          () -> {
+            getWithJersey(client);
+            return null;
+          });
+      assertEquals("Bearer second", authorization);
+      getWithJersey(client);
+      assertNull(authorization);
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  void testOkHttpClientSendsTheCallsAccessToken() throws IOException {
+    OkHttpClient client = HttpClientUtils.buildPooledOkHttpClient(new OkHttpClient(), CONFIG);
+    AccessTokenContext.call(
+        "first",
+        () -> {
+          getWithOkHttp(client);
+          return null;
+        });
+    assertEquals("Bearer first", authorization);
+    getWithOkHttp(client);
+    assertNull(authorization);
+  }
+
+  @Test
+  void testOkHttpClientCapsRequestsInFlight() throws IOException {
+    OkHttpClient client =
+        HttpClientUtils.buildPooledOkHttpClient(
+            new OkHttpClient(), new HttpClientConfiguration(1, 60, 200, 5000));
+    Request request = new Request.Builder().url(baseUrl).build();
+    Response open = client.newCall(request).execute();
+    // The only connection is held until the first response is closed
+    assertThrows(IOException.class, () -> client.newCall(request).execute());
+    open.close();
+    getWithOkHttp(client);
+  }
+
+  @Test
+  void testExplicitAuthorizationIsKept() {
+    Client client = HttpClientUtils.buildPooledJerseyClient(ClientBuilder.newClient(), CONFIG);
+    try {
+      AccessTokenContext.call(
+          "context",
+          () -> {
+            client
+                .target(baseUrl)
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, "Bearer explicit")
+                .get()
+                .close();
+            return null;
+          });
+      assertEquals("Bearer explicit", authorization);
+    } finally {
+      client.close();
+    }
+  }
+}
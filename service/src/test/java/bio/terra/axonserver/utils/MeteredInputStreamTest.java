@@ -0,0 +1,68 @@
+package bio.terra.axonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.jupiter.api.Test;
+
+class MeteredInputStreamTest {
+
+  private static final byte[] CONTENT = new byte[] {1, 2, 3, 4, 5};
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private InputStream metered() {
+    return new MeteredInputStream(
+        new ByteArrayInputStream(CONTENT), meterRegistry, "file", System.nanoTime());
+  }
+
+  private long streamCount(String outcome) {
+    return meterRegistry
+        .timer("axonserver.file.stream", "content", "file", "outcome", outcome)
+        .count();
+  }
+
+  @Test
+  void testMeasuresCompleteBody() throws IOException {
+    try (InputStream in = metered()) {
+      assertEquals(1, in.read());
+      assertArrayEquals(new byte[] {2, 3, 4, 5}, in.readAllBytes());
+    }
+
+    assertEquals(
+        CONTENT.length,
+        meterRegistry.counter("axonserver.file.bytesStreamed", "content", "file").count());
+    assertEquals(1, meterRegistry.timer("axonserver.file.firstByte", "content", "file").count());
+    assertEquals(1, streamCount("complete"));
+    assertEquals(0, streamCount("incomplete"));
+  }
+
+  @Test
+  void testMeasuresIncompleteBody() throws IOException {
+    InputStream in = metered();
+    in.readNBytes(2);
+    in.close();
+    in.close();
+
+    assertEquals(
+        2, meterRegistry.counter("axonserver.file.bytesStreamed", "content", "file").count());
+    assertEquals(1, streamCount("incomplete"));
+  }
+
+  @Test
+  void testEmptyBodyHasNoFirstByte() throws IOException {
+    try (InputStream in =
+        new MeteredInputStream(
+            InputStream.nullInputStream(), meterRegistry, "file", System.nanoTime())) {
+      assertEquals(-1, in.read());
+    }
+
+    assertNull(meterRegistry.find("axonserver.file.firstByte").timer());
+    assertEquals(1, streamCount("complete"));
+  }
+}
@@ -0,0 +1,101 @@
+package bio.terra.axonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import bio.terra.axonserver.model.ApiObjectList;
+import bio.terra.axonserver.model.ApiObjectSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.cloud.storage.BlobInfo;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class ObjectListWriterTest {
+
+  private static final ObjectMapper objectMapper =
+      new ObjectMapper().registerModule(new JavaTimeModule());
+
+  private static ApiObjectList write(List<BlobInfo> page, String nextPageToken) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ObjectListWriter.write(out, page, nextPageToken);
+    return objectMapper.readValue(out.toByteArray(), ApiObjectList.class);
+  }
+
+  // The builder setters for the fields GCS fills in are not public
+  private static BlobInfo object(
+      String name, Long size, Long generation, String contentType, Long updateTime) {
+    BlobInfo blob = mock(BlobInfo.class);
+    when(blob.getName()).thenReturn(name);
+    when(blob.getSize()).thenReturn(size);
+    when(blob.getGeneration()).thenReturn(generation);
+    when(blob.getContentType()).thenReturn(contentType);
+    when(blob.getUpdateTime()).thenReturn(updateTime);
+    return blob;
+  }
+
+  private static BlobInfo directory(String name) {
+    BlobInfo blob = mock(BlobInfo.class);
+    when(blob.getName()).thenReturn(name);
+    when(blob.isDirectory()).thenReturn(true);
+    return blob;
+  }
+
+  @Test
+  void testWritesObjectsAndPrefixes() throws IOException {
+    Instant updated = Instant.parse("2023-01-02T03:04:05.678Z");
+    List<BlobInfo> page =
+        List.of(
+            object("dir/a.txt", 12L, 7L, "text/plain", updated.toEpochMilli()),
+            directory("dir/sub/"),
+            object("dir/b.bin", 0L, 8L, null, null));
+
+    ApiObjectList list = write(page, "token");
+
+    assertEquals(
+        List.of(
+            new ApiObjectSummary()
+                .name("dir/a.txt")
+                .size(12L)
+                .generation(7L)
+                .contentType("text/plain")
+                .updated(list.getObjects().get(0).getUpdated()),
+            new ApiObjectSummary().name("dir/b.bin").size(0L).generation(8L)),
+        list.getObjects());
+    assertEquals(updated, list.getObjects().get(0).getUpdated().toInstant());
+    assertEquals(List.of("dir/sub/"), list.getPrefixes());
+    assertEquals("token", list.getNextPageToken());
+  }
+
+  @Test
+  void testLastPageHasNoToken() throws IOException {
+    ApiObjectList list = write(List.of(), null);
+
+    assertEquals(List.of(), list.getObjects());
+    assertEquals(List.of(), list.getPrefixes());
+    assertNull(list.getNextPageToken());
+  }
+
+  @Test
+  void testLeavesStreamOpen() throws IOException {
+    AtomicBoolean closed = new AtomicBoolean();
+    OutputStream out =
+        new FilterOutputStream(OutputStream.nullOutputStream()) {
+          @Override
+          public void close() {
+            closed.set(true);
+          }
+        };
+    ObjectListWriter.write(out, List.of(), null);
+    assertFalse(closed.get());
+  }
+}
@@ -0,0 +1,89 @@
+package bio.terra.axonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ReadAheadInputStreamTest {
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static byte[] bytes(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) i;
+    }
+    return bytes;
+  }
+
+  @Test
+  void testReadsWholeSource() throws IOException {
+    for (int length : new int[] {0, 1, 4, 8, 10}) {
+      byte[] content = bytes(length);
+      try (InputStream in =
+          new ReadAheadInputStream(new ByteArrayInputStream(content), 4, executor)) {
+        assertArrayEquals(content, in.readAllBytes(), "length " + length);
+      }
+    }
+  }
+
+  @Test
+  void testSingleByteReads() throws IOException {
+    try (InputStream in =
+        new ReadAheadInputStream(new ByteArrayInputStream(bytes(5)), 2, executor)) {
+      for (int i = 0; i < 5; i++) {
+        assertEquals(i, in.read());
+      }
+      assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  void testSourceFailureIsRethrown() {
+    InputStream failing =
+        new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("read failed");
+          }
+        };
+    InputStream in = new ReadAheadInputStream(failing, 4, executor);
+    IOException e = assertThrows(IOException.class, in::read);
+    assertEquals("read failed", e.getMessage());
+  }
+
+  @Test
+  void testCloseClosesSource() throws Exception {
+    AtomicBoolean closed = new AtomicBoolean();
+    InputStream source =
+        new ByteArrayInputStream(bytes(10)) {
+          @Override
+          public void close() {
+            closed.set(true);
+          }
+        };
+    InputStream in = new ReadAheadInputStream(source, 4, executor);
+    in.read();
+    in.close();
+    // The source is closed once the read ahead in progress finishes
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(closed.get());
+  }
+}
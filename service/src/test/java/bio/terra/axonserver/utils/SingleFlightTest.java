@@ -0,0 +1,130 @@
+package bio.terra.axonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+  private static final int CALLERS = 8;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final SingleFlight<String, String> flights = new SingleFlight<>("test", meterRegistry);
+  private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private double count(String result) {
+    return meterRegistry.counter("singleFlight.calls", "name", "test", "result", result).count();
+  }
+
+  /**
+   * Start callers that make the same call, which blocks until released. Returns once every caller
+   * other than the one making the call is waiting for it.
+   */
+  private List<Future<String>> startCallers(
+      AtomicInteger calls, CountDownLatch release, RuntimeException failure)
+      throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    List<Future<String>> results = new ArrayList<>();
+    for (int i = 0; i < CALLERS; i++) {
+      results.add(
+          executor.submit(
+              () ->
+                  flights.call(
+                      "key",
+                      () -> {
+                        calls.incrementAndGet();
+                        started.countDown();
+                        try {
+                          release.await();
+                        } catch (InterruptedException e) {
+                          throw new IllegalStateException(e);
+                        }
+                        if (failure != null) {
+                          throw failure;
+                        }
+                        return "value";
+                      })));
+      if (i == 0) {
+        started.await();
+      }
+    }
+    while (count("coalesced") < CALLERS - 1) {
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
+    return results;
+  }
+
+  @Test
+  void testConcurrentCallsShareOneCall() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    List<Future<String>> results = startCallers(calls, release, null);
+    release.countDown();
+
+    for (Future<String> result : results) {
+      assertEquals("value", result.get());
+    }
+    assertEquals(1, calls.get());
+    assertEquals(1, count("executed"));
+    assertEquals(CALLERS - 1, count("coalesced"));
+    assertEquals(0, flights.inFlightCount());
+  }
+
+  @Test
+  void testFailureReachesEveryCaller() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    IllegalArgumentException failure = new IllegalArgumentException("failed");
+    List<Future<String>> results = startCallers(calls, release, failure);
+    release.countDown();
+
+    for (Future<String> result : results) {
+      ExecutionException e = assertThrows(ExecutionException.class, result::get);
+      assertSame(failure, e.getCause());
+    }
+    assertEquals(1, calls.get());
+    assertEquals(0, flights.inFlightCount());
+  }
+
+  @Test
+  void testCompletedCallsAreNotReused() {
+    AtomicInteger calls = new AtomicInteger();
+    assertEquals("1", flights.call("key", () -> Integer.toString(calls.incrementAndGet())));
+    assertEquals("2", flights.call("key", () -> Integer.toString(calls.incrementAndGet())));
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            flights.call(
+                "key",
+                () -> {
+                  throw new IllegalStateException();
+                }));
+    assertEquals("3", flights.call("key", () -> Integer.toString(calls.incrementAndGet())));
+    assertEquals(4, count("executed"));
+    assertEquals(0, count("coalesced"));
+  }
+
+  @Test
+  void testDifferentKeysDoNotShareCalls() {
+    assertEquals("a", flights.call("a", () -> flights.call("b", () -> "b").replace('b', 'a')));
+    assertEquals(2, count("executed"));
+  }
+}